@@ -0,0 +1,96 @@
+# -*- coding: utf-8 -*-
+"""Reference reader of the XLearning STREAM input ring buffer.
+
+With "xlearning.input.stream.transport" set to MMAP the container writes the input records into a ring
+buffer in a memory mapped file instead of the stdin of the process, and passes the file path through the
+XLEARNING_STREAM_RING_BUFFER environment variable. The header layout (little endian) is:
+
+    0  int  magic "XLRB"
+    4  int  version
+    8  long capacity of the data region
+    16 long write position, advanced by the container
+    24 long read position, advanced by this reader
+    32 int  closed flag, set by the container once all the input is written
+
+and the data region starts at offset 64. Usage:
+
+    from ring_reader import RingBufferReader
+    for line in RingBufferReader().lines():
+        ...
+"""
+
+import mmap
+import os
+import struct
+import time
+
+HEADER_SIZE = 64
+MAGIC = b"XLRB"
+
+
+class RingBufferReader(object):
+
+    def __init__(self, path=None, wait_interval=0.0001):
+        path = path or os.environ["XLEARNING_STREAM_RING_BUFFER"]
+        self._file = open(path, "r+b")
+        self._map = mmap.mmap(self._file.fileno(), 0)
+        while self._map[0:4] != MAGIC:
+            time.sleep(wait_interval)
+        self._capacity = struct.unpack_from("<q", self._map, 8)[0]
+        self._read_position = struct.unpack_from("<q", self._map, 24)[0]
+        self._wait_interval = wait_interval
+
+    def chunks(self):
+        """Yields the input as byte strings of any size, until the container closes the buffer."""
+        while True:
+            closed = struct.unpack_from("<i", self._map, 32)[0]
+            write_position = struct.unpack_from("<q", self._map, 16)[0]
+            if write_position == self._read_position:
+                if closed:
+                    return
+                time.sleep(self._wait_interval)
+                continue
+            index = self._read_position % self._capacity
+            n = min(write_position - self._read_position, self._capacity - index)
+            chunk = self._map[HEADER_SIZE + index:HEADER_SIZE + index + n]
+            self._read_position += n
+            struct.pack_into("<q", self._map, 24, self._read_position)
+            yield chunk
+
+    def lines(self):
+        """Yields the records of the LINE framing, without the newline."""
+        pending = b""
+        for chunk in self.chunks():
+            parts = (pending + chunk).split(b"\n")
+            pending = parts.pop()
+            for line in parts:
+                yield line
+        if pending:
+            yield pending
+
+    def frames(self):
+        """Yields the records of the BINARY framing."""
+        pending = b""
+        for chunk in self.chunks():
+            pending += chunk
+            offset = 0
+            while len(pending) - offset >= 4:
+                length = struct.unpack_from(">i", pending, offset)[0]
+                if len(pending) - offset - 4 < length:
+                    break
+                yield pending[offset + 4:offset + 4 + length]
+                offset += 4 + length
+            pending = pending[offset:]
+
+    def close(self):
+        self._map.close()
+        self._file.close()
+
+
+if __name__ == "__main__":
+    import sys
+    out = getattr(sys.stdout, "buffer", sys.stdout)
+    reader = RingBufferReader()
+    for data in reader.chunks():
+        out.write(data)
+    reader.close()
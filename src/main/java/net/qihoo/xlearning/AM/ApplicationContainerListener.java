@@ -53,6 +53,8 @@ public class ApplicationContainerListener extends AbstractService implements App
 
   private final Map<XLearningContainerId, String> containersAppFinishTimeMap;
 
+  private final Map<XLearningContainerId, String> containersDownloadStatistics;
+
   private final Map<XLearningContainerId, ConcurrentHashMap<String, LinkedBlockingDeque<Object>>> containersCpuMetrics;
 
   private String clusterDefStr;
@@ -92,6 +94,7 @@ public class ApplicationContainerListener extends AbstractService implements App
     this.mapedTaskID = new ConcurrentHashMap<>();
     this.containersAppStartTimeMap = new ConcurrentHashMap<>();
     this.containersAppFinishTimeMap = new ConcurrentHashMap<>();
+    this.containersDownloadStatistics = new ConcurrentHashMap<>();
     this.clusterDef = new ConcurrentHashMap<>();
     this.clusterDef.put(XLearningConstants.WORKER, Collections.synchronizedList(new ArrayList<ContainerHostPair>()));
     this.clusterDef.put(XLearningConstants.PS, Collections.synchronizedList(new ArrayList<ContainerHostPair>()));
@@ -157,6 +160,10 @@ public class ApplicationContainerListener extends AbstractService implements App
     return this.containersAppFinishTimeMap;
   }
 
+  public Map<XLearningContainerId, String> getContainersDownloadStatistics() {
+    return this.containersDownloadStatistics;
+  }
+
   public Map<XLearningContainerId, String> getMapedTaskID() {
     return this.mapedTaskID;
   }
@@ -495,7 +502,17 @@ public class ApplicationContainerListener extends AbstractService implements App
       }
     }
 
+    String downloadStatistics = heartbeatRequest.getDownloadStatistics();
+    if (!downloadStatistics.equals("") && !downloadStatistics.equals(containersDownloadStatistics.get(containerId))) {
+      LOG.info("Container " + containerId.toString() + " download statistics " + downloadStatistics);
+      containersDownloadStatistics.put(containerId, downloadStatistics);
+    }
+
     if (containerId2Role.get(containerId).equals(XLearningConstants.WORKER.toString())) {
+      if (!currentContainerStatus.equals(XLearningContainerStatus.FAILED) && !currentContainerStatus.equals(XLearningContainerStatus.SUCCEEDED)) {
+        // a live container keeps the stream input splits it reads, however slowly its process consumes them
+        applicationContext.renewStreamInputSplitLeases(containerId);
+      }
       String localProgressLog = heartbeatRequest.getProgressLog();
       if (!localProgressLog.equals("")) {
         this.reporterProgress.put(containerId, localProgressLog);
@@ -558,6 +575,16 @@ public class ApplicationContainerListener extends AbstractService implements App
     return applicationContext.getStreamInputs(containerId).toArray(new InputSplit[inputSplitSize]);
   }
 
+  @Override
+  public InputSplitLease leaseStreamInputSplit(XLearningContainerId containerId, int epoch) {
+    return applicationContext.leaseStreamInputSplit(containerId, epoch);
+  }
+
+  @Override
+  public void finishStreamInputSplit(XLearningContainerId containerId, int epoch, int splitId) {
+    applicationContext.finishStreamInputSplit(containerId, epoch, splitId);
+  }
+
   @Override
   public OutputInfo[] getOutputLocation() {
     return applicationContext.getOutputs().toArray(new OutputInfo[0]);
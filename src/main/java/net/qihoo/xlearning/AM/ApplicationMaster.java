@@ -1,12 +1,15 @@
 package net.qihoo.xlearning.AM;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import net.qihoo.xlearning.api.ApplicationContext;
 import net.qihoo.xlearning.api.XLearningConstants;
+import net.qihoo.xlearning.api.XLearningOutputCommitter;
 import net.qihoo.xlearning.common.*;
 import net.qihoo.xlearning.conf.XLearningConfiguration;
 import net.qihoo.xlearning.container.XLearningContainer;
 import net.qihoo.xlearning.container.XLearningContainerId;
+import net.qihoo.xlearning.util.InputPathLister;
 import net.qihoo.xlearning.util.Utilities;
 import net.qihoo.xlearning.webapp.AMParams;
 import org.apache.commons.lang.StringUtils;
@@ -25,10 +28,12 @@ import org.apache.hadoop.yarn.client.api.async.AMRMClientAsync;
 import org.apache.hadoop.yarn.client.api.async.NMClientAsync;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.yarn.util.ConverterUtils;
+import org.apache.hadoop.yarn.util.RackResolver;
 import org.apache.hadoop.yarn.util.Records;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -39,13 +44,22 @@ import java.net.URI;
 import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 
 public class ApplicationMaster extends CompositeService {
 
   private static final Log LOG = LogFactory.getLog(ApplicationMaster.class);
+  // share of bytes a worker may exceed the even split by to keep a file local in the LOCALITY allocation
+  private static final double LOCALITY_BALANCE_SLACK = 0.1;
+  // size of the combined stream input splits when neither the split size nor the splits per worker is set
+  private static final long DEFAULT_STREAM_SPLIT_COMBINE_SIZE = 128 * 1024 * 1024L;
   private final Configuration conf;
   private Map<String, String> envs;
   private AMRMClientAsync<ContainerRequest> amrmAsync;
@@ -89,6 +103,9 @@ public class ApplicationMaster extends CompositeService {
   private ConcurrentHashMap<XLearningContainerId, List<InputInfo>> containerId2InputInfo;
   private InputSplit[] inputFileSplits;
   private ConcurrentHashMap<XLearningContainerId, List<InputSplit>> containerId2InputSplit;
+  private ConcurrentHashMap<XLearningContainerId, Long> containerId2InputBytes;
+  private ConcurrentHashMap<XLearningContainerId, Integer> containerId2InputSplitNum;
+  private StreamSplitQueue streamSplitQueue;
   // An RPC Service listening the container status
   private ApplicationContainerListener containerListener;
   private int statusUpdateInterval;
@@ -122,6 +139,8 @@ public class ApplicationMaster extends CompositeService {
     containerId2InputInfo = new ConcurrentHashMap<>();
     inputFileSplits = null;
     containerId2InputSplit = new ConcurrentHashMap<>();
+    containerId2InputBytes = new ConcurrentHashMap<>();
+    containerId2InputSplitNum = new ConcurrentHashMap<>();
     statusUpdateInterval = conf.getInt(XLearningConfiguration.XLEARNING_STATUS_UPDATE_INTERVAL, XLearningConfiguration.DEFAULT_XLEARNING_STATUS_PULL_INTERVAL);
     applicationAttemptID = Records.newRecord(ApplicationAttemptId.class);
     applicationMessageQueue = new LinkedBlockingQueue<>(
@@ -444,6 +463,15 @@ public class ApplicationMaster extends CompositeService {
 
     String[] inputs = StringUtils.split(xlearningInputs, "|");
     if (inputs != null && inputs.length > 0) {
+      InputPathLister lister = new InputPathLister(conf,
+          conf.getInt(XLearningConfiguration.XLEARNING_INPUT_LIST_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_LIST_THREAD_NUMS),
+          conf.get(XLearningConfiguration.XLEARNING_INPUT_ALLOCATE_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_ALLOCATE_STRATEGY).toUpperCase().equals("LOCALITY"),
+          conf.get(XLearningConfiguration.XLEARNING_INPUT_LIST_PARTITION_FILTER));
+      boolean manifestEnable = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_MANIFEST_ENABLE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_MANIFEST_ENABLE);
+      Path manifestPath = InputManifest.getManifestPath(conf, "FILES", xlearningInputs,
+          conf.get(XLearningConfiguration.XLEARNING_INPUT_LIST_PARTITION_FILTER, ""));
+      InputManifest manifest = manifestEnable ? InputManifest.load(conf, manifestPath) : null;
+      boolean listFailed = false;
       for (String input : inputs) {
         String[] inputPathTuple = StringUtils.split(input, "#");
         if (inputPathTuple.length < 2) {
@@ -452,16 +480,20 @@ public class ApplicationMaster extends CompositeService {
         List<FileStatus> fileStatus = new ArrayList<>();
         String inputPathRemote = inputPathTuple[0];
         if (!StringUtils.isBlank(inputPathRemote)) {
-          for (String singlePath : StringUtils.split(inputPathRemote, ",")) {
-            Path inputPath = new Path(singlePath);
-            try {
-              inputPath = inputPath.getFileSystem(conf).makeQualified(inputPath);
+          if (manifest != null && manifest.getFiles(inputPathTuple[1]) != null) {
+            fileStatus.addAll(manifest.getFiles(inputPathTuple[1]));
+          } else {
+            for (String singlePath : StringUtils.split(inputPathRemote, ",")) {
+              Path inputPath = new Path(singlePath);
+              try {
+                inputPath = inputPath.getFileSystem(conf).makeQualified(inputPath);
 
-              List<FileStatus> downLoadFile = Utilities.listStatusRecursively(inputPath,
-                  inputPath.getFileSystem(conf), null);
-              fileStatus.addAll(downLoadFile);
-            } catch (IOException e) {
-              e.printStackTrace();
+                List<FileStatus> downLoadFile = lister.list(inputPath);
+                fileStatus.addAll(downLoadFile);
+              } catch (IOException e) {
+                listFailed = true;
+                e.printStackTrace();
+              }
             }
           }
           input2FileStatus.put(inputPathTuple[1], fileStatus);
@@ -476,6 +508,16 @@ public class ApplicationMaster extends CompositeService {
           throw new RuntimeException("Error input path format " + xlearningInputs);
         }
       }
+      if (manifestEnable && manifest == null && !listFailed) {
+        manifest = new InputManifest();
+        for (Map.Entry<Path, Long> dir : lister.getDirectories().entrySet()) {
+          manifest.addDirectory(dir.getKey(), dir.getValue());
+        }
+        for (Map.Entry<String, List<FileStatus>> alias : input2FileStatus.entrySet()) {
+          manifest.setFiles(alias.getKey(), alias.getValue());
+        }
+        manifest.save(conf, manifestPath);
+      }
     }
   }
 
@@ -486,20 +528,149 @@ public class ApplicationMaster extends CompositeService {
       return;
     }
 
-    String[] inputPathTuple = StringUtils.split(xlearningInputs, "#");
-    if (inputPathTuple.length < 2) {
-      throw new RuntimeException("Error input path format " + xlearningInputs);
+    String[] inputs = StringUtils.split(xlearningInputs, "|");
+    Class<? extends InputFormat> inputFormatClass = conf.getClass(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_INPUTF0RMAT_CLASS, InputFormat.class);
+    // the splits are tagged with their aliases when the container has to tell the inputs apart
+    boolean aliased = inputs.length > 1 || conf.get(XLearningConfiguration.XLEARNING_INPUT_STREAM_TRANSPORT,
+        XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_TRANSPORT).toUpperCase().equals("FIFO");
+    List<InputSplit> splits = new ArrayList<>();
+    for (String input : inputs) {
+      String[] inputPathTuple = StringUtils.split(input, "#");
+      if (inputPathTuple.length < 2 || StringUtils.isBlank(inputPathTuple[0])) {
+        throw new RuntimeException("Error input path format " + xlearningInputs);
+      }
+      String alias = inputPathTuple[1];
+      InputSplit[] inputSplits = getInputStreamSplits(inputPathTuple[0],
+          conf.getClass(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS + "." + alias, inputFormatClass, InputFormat.class));
+      LOG.info("Input " + alias + " has " + inputSplits.length + " splits");
+      for (InputSplit split : inputSplits) {
+        splits.add(aliased ? new AliasInputSplit(alias, split) : split);
+      }
+    }
+    inputFileSplits = splits.toArray(new InputSplit[splits.size()]);
+  }
+
+  /**
+   * Total length of the files under the comma separated input paths, which may be globs.
+   */
+  private long getInputSize(String inputPathRemote) throws IOException {
+    long totalSize = 0L;
+    for (String singlePath : StringUtils.split(inputPathRemote, ",")) {
+      Path inputPath = new Path(singlePath);
+      FileSystem fs = inputPath.getFileSystem(conf);
+      FileStatus[] matches = fs.globStatus(inputPath);
+      if (matches != null) {
+        for (FileStatus match : matches) {
+          totalSize += fs.getContentSummary(match.getPath()).getLength();
+        }
+      }
     }
-    String inputPathRemote = inputPathTuple[0];
-    if (!StringUtils.isBlank(inputPathRemote)) {
-      JobConf jobConf = new JobConf(conf);
-      jobConf.set(XLearningConstants.STREAM_INPUT_DIR, inputPathRemote);
-      InputFormat inputFormat = ReflectionUtils.newInstance(conf.getClass(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_INPUTF0RMAT_CLASS, InputFormat.class),
-          jobConf);
-      inputFileSplits = inputFormat.getSplits(jobConf, 1);
-    } else {
-      throw new RuntimeException("Error input path format " + xlearningInputs);
+    return totalSize;
+  }
+
+  private InputSplit[] getInputStreamSplits(String inputPathRemote, Class<? extends InputFormat> inputFormatClass) throws IOException {
+    JobConf jobConf = new JobConf(conf);
+    jobConf.set(XLearningConstants.STREAM_INPUT_DIR, inputPathRemote);
+    long splitSize = conf.getLong(XLearningConfiguration.XLEARNING_INPUT_STREAM_SPLIT_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SPLIT_SIZE);
+    int splitsPerWorker = conf.getInt(XLearningConfiguration.XLEARNING_INPUT_STREAM_SPLITS_PER_WORKER, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SPLITS_PER_WORKER);
+    boolean splitCombine = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_SPLIT_COMBINE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SPLIT_COMBINE);
+    int numSplits = 1;
+    if (splitSize > 0 && org.apache.hadoop.mapred.FileInputFormat.class.isAssignableFrom(inputFormatClass)) {
+      // the FileInputFormat splits at max(minSize, min(totalSize / numSplits, blockSize)), so this is the split size
+      jobConf.setLong(org.apache.hadoop.mapreduce.lib.input.FileInputFormat.SPLIT_MINSIZE, splitSize);
+      numSplits = Integer.MAX_VALUE;
+    } else if (splitSize > 0) {
+      // other input formats may take the number of splits literally
+      long totalSize = getInputSize(inputPathRemote);
+      numSplits = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, (totalSize + splitSize - 1) / splitSize));
+      LOG.info("Input " + inputPathRemote + " of " + totalSize + " bytes is split into " + numSplits + " splits of "
+          + inputFormatClass.getName());
+    } else if (splitsPerWorker > 0) {
+      numSplits = workerNum * splitsPerWorker;
+    }
+    boolean manifestEnable = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_MANIFEST_ENABLE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_MANIFEST_ENABLE);
+    Path manifestPath = InputManifest.getManifestPath(conf, "SPLITS", inputPathRemote, inputFormatClass.getName(),
+        jobConf.get(org.apache.hadoop.mapreduce.lib.input.FileInputFormat.SPLIT_MINSIZE, "0"), String.valueOf(numSplits),
+        String.valueOf(splitCombine));
+    InputManifest manifest = manifestEnable ? InputManifest.load(conf, manifestPath) : null;
+    if (manifest != null) {
+      return manifest.getSplits();
+    }
+    manifest = new InputManifest();
+    if (manifestEnable) {
+      // the input dirs are recorded before splitting, so a change during the splitting invalidates the manifest
+      for (String singlePath : StringUtils.split(inputPathRemote, ",")) {
+        Path inputPath = new Path(singlePath);
+        FileSystem fs = inputPath.getFileSystem(conf);
+        FileStatus[] roots = fs.globStatus(inputPath);
+        if (roots != null) {
+          for (FileStatus root : roots) {
+            if (root.isDirectory()) {
+              manifest.addDirectory(fs.makeQualified(root.getPath()), root.getModificationTime());
+            }
+          }
+        }
+      }
+    }
+    InputFormat inputFormat = ReflectionUtils.newInstance(inputFormatClass, jobConf);
+    InputSplit[] fileSplits = inputFormat.getSplits(jobConf, numSplits);
+    LOG.info("Input splits number is " + fileSplits.length);
+    InputSplit[] splits = fileSplits;
+    if (splitCombine) {
+      long combineSize = DEFAULT_STREAM_SPLIT_COMBINE_SIZE;
+      if (splitSize > 0) {
+        combineSize = splitSize;
+      } else if (splitsPerWorker > 0) {
+        long totalSize = 0L;
+        for (InputSplit split : fileSplits) {
+          totalSize += split.getLength();
+        }
+        combineSize = Math.max(1L, totalSize / numSplits);
+      }
+      splits = StreamSplitCombiner.combine(jobConf, fileSplits, combineSize);
+    }
+    if (manifestEnable) {
+      Set<Path> splitDirs = new HashSet<>();
+      Map<String, Long> splitEnds = new HashMap<>();
+      for (InputSplit split : fileSplits) {
+        if (split instanceof FileSplit) {
+          FileSplit fileSplit = (FileSplit) split;
+          splitDirs.add(fileSplit.getPath().getParent());
+          String file = fileSplit.getPath().toUri().getPath();
+          Long end = splitEnds.get(file);
+          splitEnds.put(file, Math.max(end == null ? 0L : end, fileSplit.getStart() + fileSplit.getLength()));
+        }
+      }
+      boolean verifyFiles = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_MANIFEST_VERIFY_FILES,
+          XLearningConfiguration.DEFAULT_XLEARNING_INPUT_MANIFEST_VERIFY_FILES);
+      boolean splitFilesChanged = false;
+      for (Path splitDir : splitDirs) {
+        FileSystem fs = splitDir.getFileSystem(conf);
+        Path qualifiedDir = fs.makeQualified(splitDir);
+        if (!manifest.getDirectories().containsKey(qualifiedDir.toString())) {
+          manifest.addDirectory(qualifiedDir, fs.getFileStatus(splitDir).getModificationTime());
+        }
+        if (!verifyFiles) {
+          continue;
+        }
+        // an append changes the length of a file but not the time of its dir, so the files are recorded too
+        for (FileStatus child : fs.listStatus(splitDir)) {
+          Long end = splitEnds.get(child.getPath().toUri().getPath());
+          if (end != null) {
+            // the splits cover the whole file, unless it was appended to while splitting
+            splitFilesChanged |= end != child.getLen();
+            manifest.addSplitFile(child);
+          }
+        }
+      }
+      manifest.setSplits(splits);
+      if (splitFilesChanged) {
+        LOG.info("Input files changed while splitting, do not save the input manifest.");
+      } else {
+        manifest.save(conf, manifestPath);
+      }
     }
+    return splits;
   }
 
   @SuppressWarnings("deprecation")
@@ -509,15 +680,35 @@ public class ApplicationMaster extends CompositeService {
       LOG.info("Initializing " + container.getId().toString() + " input splits");
       containerId2InputInfo.putIfAbsent(new XLearningContainerId(container.getId()), new ArrayList<InputInfo>());
     }
+    String allocateStrategy = conf.get(XLearningConfiguration.XLEARNING_INPUT_ALLOCATE_STRATEGY,
+        XLearningConfiguration.DEFAULT_XLEARNING_INPUT_ALLOCATE_STRATEGY).toUpperCase();
+    LOG.info("Input files allocate strategy is " + allocateStrategy);
     Set<String> fileKeys = input2FileStatus.keySet();
+    // bytes assigned to each worker over all the aliases, so the balancing spans them
+    long[] workerBytes = new long[workerNum];
     for (String fileName : fileKeys) {
       List<FileStatus> files = input2FileStatus.get(fileName);
-      List<Path> paths = Utilities.convertStatusToPath(files);
+      int[] assignment;
+      if (allocateStrategy.equals("LOCALITY")) {
+        assignment = assignInputFilesByLocality(files);
+      } else if (allocateStrategy.equals("SIZEBALANCED")) {
+        long[] sizes = new long[files.size()];
+        for (int i = 0; i < sizes.length; i++) {
+          sizes[i] = files.get(i).getLen();
+        }
+        assignment = assignBySize(sizes, workerBytes);
+      } else {
+        assignment = new int[files.size()];
+        for (int i = 0; i < assignment.length; i++) {
+          assignment[i] = i % workerNum;
+        }
+      }
       ConcurrentHashMap<XLearningContainerId, ConcurrentHashMap<String, InputInfo>> containersFiles = new ConcurrentHashMap<>();
-      for (int i = 0, len = paths.size(); i < len; i++) {
-        Integer index = i % workerNum;
+      for (int i = 0, len = files.size(); i < len; i++) {
+        Integer index = assignment[i];
         ConcurrentHashMap<String, InputInfo> mapSplit;
         XLearningContainerId containerId = new XLearningContainerId(acquiredWorkerContainers.get(index).getId());
+        addInputBytes(containerId, files.get(i).getLen());
         if (containersFiles.containsKey(containerId)) {
           mapSplit = containersFiles.get(containerId);
         } else {
@@ -525,13 +716,11 @@ public class ApplicationMaster extends CompositeService {
           containersFiles.put(containerId, mapSplit);
         }
         if (mapSplit.containsKey(fileName)) {
-          mapSplit.get(fileName).addPath(paths.get(i));
+          mapSplit.get(fileName).addPath(files.get(i).getPath(), files.get(i).getLen(), files.get(i).getModificationTime());
         } else {
           InputInfo inputInfo = new InputInfo();
           inputInfo.setAliasName(fileName);
-          List<Path> ps = new ArrayList<>();
-          ps.add(paths.get(i));
-          inputInfo.setPaths(ps);
+          inputInfo.addPath(files.get(i).getPath(), files.get(i).getLen(), files.get(i).getModificationTime());
           mapSplit.put(fileName, inputInfo);
         }
       }
@@ -542,6 +731,159 @@ public class ApplicationMaster extends CompositeService {
       }
     }
     LOG.info("inputInfo " + new Gson().toJson(containerId2InputInfo));
+    LOG.info("Input bytes of each container " + containerId2InputBytes);
+  }
+
+  /**
+   * Longest processing time first bin packing: the items are placed from the largest to the smallest,
+   * each on the worker with the fewest bytes so far, counting the bytes already in workerBytes, which
+   * is updated with the items placed.
+   */
+  private int[] assignBySize(final long[] sizes, final long[] workerBytes) {
+    Integer[] order = new Integer[sizes.length];
+    for (int i = 0; i < sizes.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        return Long.compare(sizes[i2], sizes[i1]);
+      }
+    });
+    PriorityQueue<Integer> workers = new PriorityQueue<>(workerNum, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer w1, Integer w2) {
+        int cmp = Long.compare(workerBytes[w1], workerBytes[w2]);
+        return cmp != 0 ? cmp : Integer.compare(w1, w2);
+      }
+    });
+    for (int w = 0; w < workerNum; w++) {
+      workers.add(w);
+    }
+    int[] assignment = new int[sizes.length];
+    for (Integer item : order) {
+      int worker = workers.poll();
+      assignment[item] = worker;
+      workerBytes[worker] += sizes[item];
+      workers.add(worker);
+    }
+    return assignment;
+  }
+
+  private void addInputBytes(XLearningContainerId containerId, long bytes) {
+    Long current = containerId2InputBytes.get(containerId);
+    containerId2InputBytes.put(containerId, current == null ? bytes : current + bytes);
+  }
+
+  /**
+   * Assigns each file to the worker holding most of its blocks on the same node, then on the same rack,
+   * as long as the worker stays under the balanced share of bytes. Files are placed from the largest to
+   * the smallest so that the big ones get the best locality, and every worker receives at least one file.
+   */
+  private int[] assignInputFilesByLocality(List<FileStatus> files) {
+    int fileNum = files.size();
+    String[] workerHosts = new String[workerNum];
+    String[] workerRacks = new String[workerNum];
+    for (int w = 0; w < workerNum; w++) {
+      workerHosts[w] = acquiredWorkerContainers.get(w).getNodeId().getHost();
+      workerRacks[w] = RackResolver.resolve(conf, workerHosts[w]).getNetworkLocation();
+    }
+
+    List<Map<String, Long>> hostBytes = new ArrayList<>(fileNum);
+    List<Map<String, Long>> rackBytes = new ArrayList<>(fileNum);
+    long totalBytes = 0L;
+    for (FileStatus file : files) {
+      Map<String, Long> fileHostBytes = new HashMap<>();
+      Map<String, Long> fileRackBytes = new HashMap<>();
+      try {
+        BlockLocation[] blocks = file instanceof LocatedFileStatus ? ((LocatedFileStatus) file).getBlockLocations()
+            : file.getPath().getFileSystem(conf).getFileBlockLocations(file, 0, file.getLen());
+        for (BlockLocation block : blocks) {
+          for (String host : block.getHosts()) {
+            addBytes(fileHostBytes, host, block.getLength());
+          }
+          for (String topologyPath : block.getTopologyPaths()) {
+            addBytes(fileRackBytes, topologyPath.substring(0, topologyPath.lastIndexOf('/')), block.getLength());
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Get block locations of " + file.getPath() + " failed, assign it without locality.", e);
+      }
+      hostBytes.add(fileHostBytes);
+      rackBytes.add(fileRackBytes);
+      totalBytes += file.getLen();
+    }
+
+    Integer[] order = new Integer[fileNum];
+    for (int i = 0; i < fileNum; i++) {
+      order[i] = i;
+    }
+    final List<FileStatus> sortFiles = files;
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer f1, Integer f2) {
+        return Long.compare(sortFiles.get(f2).getLen(), sortFiles.get(f1).getLen());
+      }
+    });
+
+    long capacity = (long) Math.ceil((double) totalBytes / workerNum * (1 + LOCALITY_BALANCE_SLACK));
+    long[] workerBytes = new long[workerNum];
+    int[] workerFiles = new int[workerNum];
+    int emptyWorkers = workerNum;
+    long nodeLocalBytes = 0L;
+    long rackLocalBytes = 0L;
+    int[] assignment = new int[fileNum];
+    for (int k = 0; k < fileNum; k++) {
+      int f = order[k];
+      long len = files.get(f).getLen();
+      boolean onlyEmpty = fileNum - k <= emptyWorkers;
+      int best = -1;
+      long bestNode = -1L;
+      long bestRack = -1L;
+      int leastLoaded = -1;
+      for (int w = 0; w < workerNum; w++) {
+        if (onlyEmpty && workerFiles[w] > 0) {
+          continue;
+        }
+        if (leastLoaded < 0 || workerBytes[w] < workerBytes[leastLoaded]) {
+          leastLoaded = w;
+        }
+        if (workerBytes[w] + len > capacity) {
+          continue;
+        }
+        long node = getBytes(hostBytes.get(f), workerHosts[w]);
+        long rack = getBytes(rackBytes.get(f), workerRacks[w]);
+        if (node > bestNode || (node == bestNode && (rack > bestRack
+            || (rack == bestRack && workerBytes[w] < workerBytes[best])))) {
+          best = w;
+          bestNode = node;
+          bestRack = rack;
+        }
+      }
+      if (best < 0) {
+        best = leastLoaded;
+      }
+      assignment[f] = best;
+      if (workerFiles[best]++ == 0) {
+        emptyWorkers--;
+      }
+      workerBytes[best] += len;
+      nodeLocalBytes += getBytes(hostBytes.get(f), workerHosts[best]);
+      rackLocalBytes += getBytes(rackBytes.get(f), workerRacks[best]);
+    }
+    LOG.info("Locality assignment of " + fileNum + " files with " + totalBytes + " bytes: node-local bytes "
+        + nodeLocalBytes + ", rack-local bytes " + rackLocalBytes + ", per worker bytes " + Arrays.toString(workerBytes));
+    return assignment;
+  }
+
+  private static void addBytes(Map<String, Long> bytes, String key, long length) {
+    Long current = bytes.get(key);
+    bytes.put(key, current == null ? length : current + length);
+  }
+
+  private static long getBytes(Map<String, Long> bytes, String key) {
+    Long current = bytes.get(key);
+    return current == null ? 0L : current;
   }
 
   private void allocateInputStreamSplits() {
@@ -550,27 +892,85 @@ public class ApplicationMaster extends CompositeService {
       LOG.info("Initializing " + container.getId().toString() + " input splits");
       containerId2InputSplit.putIfAbsent(new XLearningContainerId(container.getId()), new ArrayList<InputSplit>());
     }
-    if (conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_SHUFFLE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SHUFFLE)) {
+    boolean aliased = inputFileSplits.length > 0 && inputFileSplits[0] instanceof AliasInputSplit;
+    boolean dynamicSplit = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_SPLIT_DYNAMIC, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SPLIT_DYNAMIC);
+    if (dynamicSplit && aliased) {
+      LOG.warn("Dynamic split assignment only supports a single input delivered on stdin, assign the splits upfront.");
+      dynamicSplit = false;
+    }
+    if (dynamicSplit) {
+      LOG.info("Input splits are leased to the containers dynamically");
+      streamSplitQueue = new StreamSplitQueue(inputFileSplits,
+          conf.getLong(XLearningConfiguration.XLEARNING_INPUT_STREAM_SPLIT_LEASE_TIMEOUT, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SPLIT_LEASE_TIMEOUT));
+      return;
+    }
+    // every worker gets its share of each input
+    Map<String, List<InputSplit>> aliasSplits = new LinkedHashMap<>();
+    for (InputSplit split : inputFileSplits) {
+      String alias = aliased ? ((AliasInputSplit) split).getAlias() : "";
+      if (!aliasSplits.containsKey(alias)) {
+        aliasSplits.put(alias, new ArrayList<InputSplit>());
+      }
+      aliasSplits.get(alias).add(split);
+    }
+    long[] workerBytes = new long[workerNum];
+    for (List<InputSplit> splits : aliasSplits.values()) {
+      assignInputStreamSplits(splits.toArray(new InputSplit[splits.size()]), workerBytes);
+    }
+    for (Map.Entry<XLearningContainerId, List<InputSplit>> entry : containerId2InputSplit.entrySet()) {
+      long bytes = 0L;
+      for (InputSplit split : entry.getValue()) {
+        try {
+          bytes += split.getLength();
+        } catch (IOException e) {
+          LOG.debug("Get the length of split " + split + " failed.", e);
+        }
+      }
+      containerId2InputBytes.put(entry.getKey(), bytes);
+      containerId2InputSplitNum.put(entry.getKey(), entry.getValue().size());
+    }
+    LOG.info("Input bytes of each container " + containerId2InputBytes);
+  }
+
+  private void assignInputStreamSplits(InputSplit[] splits, long[] workerBytes) {
+    if (conf.get(XLearningConfiguration.XLEARNING_INPUT_ALLOCATE_STRATEGY,
+        XLearningConfiguration.DEFAULT_XLEARNING_INPUT_ALLOCATE_STRATEGY).toUpperCase().equals("SIZEBALANCED")) {
+      LOG.info("Input splits allocate strategy is SIZEBALANCED");
+      long[] sizes = new long[splits.length];
+      for (int i = 0; i < sizes.length; i++) {
+        try {
+          sizes[i] = splits[i].getLength();
+        } catch (IOException e) {
+          LOG.warn("Get the length of split " + (i + 1) + " failed, treat it as empty.", e);
+        }
+      }
+      int[] assignment = assignBySize(sizes, workerBytes);
+      for (int i = 0, len = splits.length; i < len; i++) {
+        XLearningContainerId containerId = new XLearningContainerId(acquiredWorkerContainers.get(assignment[i]).getId());
+        containerId2InputSplit.get(containerId).add(splits[i]);
+        LOG.info("put split " + (i + 1) + " to " + containerId.toString());
+      }
+    } else if (conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_SHUFFLE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SHUFFLE)) {
       LOG.info("XLEARNING_INPUT_STREAM_SHUFFLE is true");
-      for (int i = 0, len = inputFileSplits.length; i < len; i++) {
+      for (int i = 0, len = splits.length; i < len; i++) {
         Integer index = i % workerNum;
         XLearningContainerId containerId = new XLearningContainerId(acquiredWorkerContainers.get(index).getId());
-        containerId2InputSplit.get(containerId).add(inputFileSplits[i]);
+        containerId2InputSplit.get(containerId).add(splits[i]);
         LOG.info("put split " + (i + 1) + " to " + containerId.toString());
       }
     } else {
       LOG.info("XLEARNING_INPUT_STREAM_SHUFFLE is false");
-      int nsplit = inputFileSplits.length / workerNum;
-      int msplit = inputFileSplits.length % workerNum;
+      int nsplit = splits.length / workerNum;
+      int msplit = splits.length % workerNum;
       int count = 0;
       for (int i = 0; i < workerNum; i++) {
         XLearningContainerId containerId = new XLearningContainerId(acquiredWorkerContainers.get(i).getId());
         for (int j = 0; j < nsplit; j++) {
-          containerId2InputSplit.get(containerId).add(inputFileSplits[count++]);
+          containerId2InputSplit.get(containerId).add(splits[count++]);
           LOG.info("put split " + count + " to " + containerId.toString());
         }
         if (msplit > 0) {
-          containerId2InputSplit.get(containerId).add(inputFileSplits[count++]);
+          containerId2InputSplit.get(containerId).add(splits[count++]);
           LOG.info("put split " + count + " to " + containerId.toString());
           msplit--;
         }
@@ -603,6 +1003,76 @@ public class ApplicationMaster extends CompositeService {
     }
   }
 
+  /**
+   * Commits the outputs of the succeeded workers with the output committer, the tasks on a pool of threads,
+   * unless the containers committed their own outputs already, and then finishes every output.
+   */
+  private void commitOutputs() throws IOException {
+    if (outputInfos.size() == 0) {
+      return;
+    }
+    boolean streamOutput = conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STRATEGY).equals("STREAM");
+    // the stream output is only written to the first output location
+    List<OutputInfo> outputs = streamOutput ? outputInfos.subList(0, 1) : outputInfos;
+    final XLearningOutputCommitter committer = ReflectionUtils.newInstance(
+        conf.getClass(XLearningConfiguration.XLEARNING_OUTPUT_COMMITTER_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMMITTER_CLASS, XLearningOutputCommitter.class), conf);
+    long start = System.currentTimeMillis();
+    if (conf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_CONTAINER_COMMIT, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_CONTAINER_COMMIT)) {
+      LOG.info("The worker containers committed their outputs, AM only commits the job.");
+    } else {
+      LOG.info("AM committing the outputs of " + acquiredWorkerContainers.size() + " workers with " + committer.getClass().getName());
+      Map<XLearningContainerId, String> mapPath = applicationContext.getMapedTaskID();
+      int commitThreads = Math.max(1, conf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_COMMIT_THREADS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMMIT_THREADS));
+      ExecutorService commitPool = Executors.newFixedThreadPool(commitThreads,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Output-Committer #%d").build());
+      try {
+        List<Future<?>> commits = new ArrayList<>();
+        for (OutputInfo outputInfo : outputs) {
+          final FileSystem fs = new Path(outputInfo.getDfsLocation()).getFileSystem(conf);
+          for (Container finishedContainer : acquiredWorkerContainers) {
+            String containerId = finishedContainer.getId().toString();
+            final Path tmpResultPath;
+            if (streamOutput) {
+              String taskID = mapPath.get(new XLearningContainerId(finishedContainer.getId()));
+              if (taskID == null) {
+                continue;
+              }
+              tmpResultPath = Utilities.getStreamTaskOutputPath(outputInfo.getDfsLocation(), containerId, taskID);
+            } else {
+              tmpResultPath = Utilities.getTaskTemporaryOutputPath(outputInfo.getDfsLocation(), containerId);
+            }
+            final Path finalResultPath = Utilities.getTaskFinalOutputPath(outputInfo.getDfsLocation(), containerId);
+            commits.add(commitPool.submit(new Callable<Void>() {
+              @Override
+              public Void call() throws IOException {
+                committer.commitTask(fs, tmpResultPath, finalResultPath);
+                return null;
+              }
+            }));
+          }
+        }
+        for (Future<?> commit : commits) {
+          try {
+            commit.get();
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while committing the outputs");
+          } catch (ExecutionException e) {
+            throw new IOException("Commit the output of a worker failed", e.getCause());
+          }
+        }
+      } finally {
+        commitPool.shutdownNow();
+      }
+    }
+    for (OutputInfo outputInfo : outputs) {
+      Path output = new Path(outputInfo.getDfsLocation());
+      FileSystem fs = output.getFileSystem(conf);
+      committer.commitJob(fs, output);
+      fs.close();
+    }
+    LOG.info("Committed the outputs in " + (System.currentTimeMillis() - start) + " ms");
+  }
+
   private void registerApplicationMaster() {
     try {
       amrmAsync.registerApplicationMaster(this.messageService.getServerAddress().getHostName(),
@@ -734,6 +1204,11 @@ public class ApplicationMaster extends CompositeService {
     containerEnv.put(XLearningConstants.Environment.XLEARNING_TF_ROLE.toString(), role);
     containerEnv.put(XLearningConstants.Environment.XLEARNING_EXEC_CMD.toString(), xlearningCommand);
     containerEnv.put(XLearningConstants.Environment.XLEARNING_APP_TYPE.toString(), xlearningAppType);
+    if (conf.get(XLearningConfiguration.XLEARNING_INPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STRATEGY).equals("STREAM")
+        && envs.containsKey(XLearningConstants.Environment.XLEARNING_INPUTS.toString())) {
+      // the containers deliver the stream inputs by their aliases, including those they got no split of
+      containerEnv.put(XLearningConstants.Environment.XLEARNING_INPUTS.toString(), envs.get(XLearningConstants.Environment.XLEARNING_INPUTS.toString()));
+    }
     if (xlearningAppType.equals("MXNET") && !singleMx) {
       containerEnv.put(XLearningConstants.Environment.XLEARNING_MXNET_WORKER_NUM.toString(), String.valueOf(workerNum));
       containerEnv.put(XLearningConstants.Environment.XLEARNING_MXNET_SERVER_NUM.toString(), String.valueOf(psNum));
@@ -1272,47 +1747,7 @@ public class ApplicationMaster extends CompositeService {
 
       finalSuccess = containerListener.isAllWorkerContainersSucceeded();
       if (finalSuccess) {
-        if ((conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STRATEGY).equals("STREAM")) && outputInfos.size() > 0) {
-          LOG.info("XLEARNING_OUTPUT_STRATEGY is STREAM, AM handling the final result...");
-          FileSystem fs = new Path(outputInfos.get(0).getDfsLocation()).getFileSystem(conf);
-          Map<XLearningContainerId, String> mapPath = applicationContext.getMapedTaskID();
-          for (Container finishedContainer : acquiredWorkerContainers) {
-            String taskID = mapPath.get(new XLearningContainerId(finishedContainer.getId()));
-            Path tmpResultPath = new Path(outputInfos.get(0).getDfsLocation() + "/_temporary/" + finishedContainer.getId().toString()
-                + "/_temporary/0/_temporary/" + taskID);
-            LOG.info("tmpResultPath is " + tmpResultPath.toString());
-            Path finalResultPath = new Path(outputInfos.get(0).getDfsLocation() + "/" + finishedContainer.getId().toString());
-            LOG.info("finalResultPath is " + finalResultPath.toString());
-            if (fs.exists(tmpResultPath)) {
-              LOG.info("Move from " + tmpResultPath.toString() + " to " + finalResultPath.toString());
-              fs.rename(tmpResultPath, finalResultPath);
-            }
-          }
-          Path tmpPath = new Path(outputInfos.get(0).getDfsLocation() + "/_temporary/");
-          if (fs.exists(tmpPath)) {
-            fs.delete(tmpPath, true);
-          }
-          fs.createNewFile(new Path(outputInfos.get(0).getDfsLocation() + "/_SUCCESS"));
-          fs.close();
-        } else {
-          for (OutputInfo outputInfo : outputInfos) {
-            FileSystem fs = new Path(outputInfo.getDfsLocation()).getFileSystem(conf);
-            Path finalResultPath = new Path(outputInfo.getDfsLocation());
-            for (Container finishedContainer : acquiredWorkerContainers) {
-              Path tmpResultPath = new Path(outputInfo.getDfsLocation() + "/_temporary/" + finishedContainer.getId().toString());
-              if (fs.exists(tmpResultPath)) {
-                LOG.info("Move from " + tmpResultPath.toString() + " to " + finalResultPath);
-                fs.rename(tmpResultPath, finalResultPath);
-              }
-            }
-            Path tmpPath = new Path(outputInfo.getDfsLocation() + "/_temporary/");
-            if (fs.exists(tmpPath)) {
-              fs.delete(tmpPath, true);
-            }
-            fs.createNewFile(new Path(outputInfo.getDfsLocation() + "/_SUCCESS"));
-            fs.close();
-          }
-        }
+        commitOutputs();
       }
     } catch (Exception e) {
       finalSuccess = false;
@@ -1397,6 +1832,44 @@ public class ApplicationMaster extends CompositeService {
       return containerId2InputSplit.get(containerId);
     }
 
+    @Override
+    public InputSplitLease leaseStreamInputSplit(XLearningContainerId containerId, int epoch) {
+      if (streamSplitQueue == null) {
+        return new InputSplitLease(InputSplitLease.FINISHED, null);
+      }
+      for (XLearningContainerId holder : streamSplitQueue.getLeaseHolders()) {
+        if (XLearningContainerStatus.FAILED.equals(containerListener.getContainerStatus(holder))) {
+          streamSplitQueue.requeue(holder);
+        }
+      }
+      return streamSplitQueue.lease(containerId, epoch);
+    }
+
+    @Override
+    public void renewStreamInputSplitLeases(XLearningContainerId containerId) {
+      if (streamSplitQueue != null) {
+        streamSplitQueue.renew(containerId);
+      }
+    }
+
+    @Override
+    public void finishStreamInputSplit(XLearningContainerId containerId, int epoch, int splitId) {
+      if (streamSplitQueue == null || !streamSplitQueue.finish(containerId, epoch, splitId)) {
+        return;
+      }
+      long bytes = 0L;
+      try {
+        bytes = inputFileSplits[splitId].getLength();
+      } catch (IOException e) {
+        LOG.debug("Get the length of split " + splitId + " failed.", e);
+      }
+      synchronized (containerId2InputSplitNum) {
+        addInputBytes(containerId, bytes);
+        Integer current = containerId2InputSplitNum.get(containerId);
+        containerId2InputSplitNum.put(containerId, current == null ? 1 : current + 1);
+      }
+    }
+
     @Override
     public List<OutputInfo> getOutputs() {
       return outputInfos;
@@ -1427,6 +1900,16 @@ public class ApplicationMaster extends CompositeService {
       return containerListener.getMapedTaskID();
     }
 
+    @Override
+    public Map<XLearningContainerId, Long> getContainersInputBytes() {
+      return containerId2InputBytes;
+    }
+
+    @Override
+    public Map<XLearningContainerId, Integer> getContainersInputSplitNum() {
+      return containerId2InputSplitNum;
+    }
+
     @Override
     public Map<XLearningContainerId, ConcurrentHashMap<String, LinkedBlockingDeque<Object>>> getContainersCpuMetrics() {
       return containerListener.getContainersCpuMetrics();
@@ -0,0 +1,377 @@
+package net.qihoo.xlearning.AM;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The listed input files or the computed input splits of an application, persisted in the staging dir so
+ * that a later attempt or a resubmission of the same inputs can skip listing and splitting again. The
+ * manifest records the modification time of the directories it was built from, and is dropped as soon as
+ * any of them changed, which costs one status call per directory on the listing threads. Appending to a
+ * file does not change the modification time of its directory, so the length and the modification time of
+ * the files it lists or splits are checked as well if xlearning.input.manifest.verify.files is set.
+ */
+class InputManifest {
+
+  private static final Log LOG = LogFactory.getLog(InputManifest.class);
+
+  private static final int VERSION = 2;
+
+  private static final String MANIFEST_DIR = "inputManifest";
+
+  private final Map<String, Long> directories = new LinkedHashMap<>();
+
+  private final Map<String, List<FileStatus>> files = new LinkedHashMap<>();
+
+  private final List<FileStatus> splitFiles = new ArrayList<>();
+
+  private InputSplit[] splits = new InputSplit[0];
+
+  InputManifest() {
+  }
+
+  Map<String, Long> getDirectories() {
+    return directories;
+  }
+
+  void addDirectory(Path dir, long modificationTime) {
+    directories.put(dir.toString(), modificationTime);
+  }
+
+  List<FileStatus> getFiles(String aliasName) {
+    return files.get(aliasName);
+  }
+
+  void setFiles(String aliasName, List<FileStatus> fileStatuses) {
+    files.put(aliasName, fileStatuses);
+  }
+
+  /**
+   * Records a file the splits are computed from, to check it has not changed when the manifest is loaded.
+   */
+  void addSplitFile(FileStatus fileStatus) {
+    splitFiles.add(fileStatus);
+  }
+
+  InputSplit[] getSplits() {
+    return splits;
+  }
+
+  void setSplits(InputSplit[] splits) {
+    this.splits = splits;
+  }
+
+  /**
+   * The manifest path of the inputs, named by the digest of everything the listing or splitting depends on.
+   */
+  static Path getManifestPath(Configuration conf, String... keys) {
+    StringBuilder key = new StringBuilder();
+    for (String part : keys) {
+      key.append(part).append('\u0001');
+    }
+    Path manifestDir = new Path(conf.get(XLearningConfiguration.XLEARNING_STAGING_DIR,
+        XLearningConfiguration.DEFAULT_XLEARNING_STAGING_DIR), MANIFEST_DIR);
+    return new Path(new Path(conf.get("fs.defaultFS"), manifestDir), DigestUtils.md5Hex(key.toString()));
+  }
+
+  /**
+   * Loads the manifest, returns null if it does not exist, can not be read, or any of its directories, or
+   * of its files if they are verified, has been modified since it was written.
+   */
+  static InputManifest load(Configuration conf, Path manifestPath) {
+    long start = System.currentTimeMillis();
+    DataInputStream in = null;
+    try {
+      FileSystem fs = manifestPath.getFileSystem(conf);
+      if (!fs.exists(manifestPath)) {
+        LOG.info("Input manifest " + manifestPath + " does not exist.");
+        return null;
+      }
+      FSDataInputStream fsIn = fs.open(manifestPath);
+      in = new DataInputStream(new GZIPInputStream(fsIn));
+      if (in.readInt() != VERSION) {
+        LOG.info("Input manifest " + manifestPath + " is of another version, ignore it.");
+        return null;
+      }
+      InputManifest manifest = new InputManifest();
+      int dirNum = in.readInt();
+      for (int i = 0; i < dirNum; i++) {
+        manifest.directories.put(Text.readString(in), in.readLong());
+      }
+      int aliasNum = in.readInt();
+      for (int i = 0; i < aliasNum; i++) {
+        String aliasName = Text.readString(in);
+        int fileNum = in.readInt();
+        List<FileStatus> fileStatuses = new ArrayList<>(fileNum);
+        for (int j = 0; j < fileNum; j++) {
+          FileStatus fileStatus = new FileStatus();
+          fileStatus.readFields(in);
+          fileStatuses.add(fileStatus);
+        }
+        manifest.files.put(aliasName, fileStatuses);
+      }
+      int splitFileNum = in.readInt();
+      for (int i = 0; i < splitFileNum; i++) {
+        FileStatus fileStatus = new FileStatus();
+        fileStatus.readFields(in);
+        manifest.splitFiles.add(fileStatus);
+      }
+      int splitNum = in.readInt();
+      manifest.splits = new InputSplit[splitNum];
+      if (splitNum > 0) {
+        Class<? extends InputSplit> splitClass = conf.getClassByName(Text.readString(in)).asSubclass(InputSplit.class);
+        for (int i = 0; i < splitNum; i++) {
+          InputSplit split = ReflectionUtils.newInstance(splitClass, conf);
+          split.readFields(in);
+          manifest.splits[i] = split;
+        }
+      }
+
+      List<Callable<Boolean>> checks = new ArrayList<>();
+      for (Map.Entry<String, Long> dir : manifest.directories.entrySet()) {
+        checks.add(new DirectoryCheck(conf, new Path(dir.getKey()), dir.getValue(), manifestPath));
+      }
+      if (conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_MANIFEST_VERIFY_FILES,
+          XLearningConfiguration.DEFAULT_XLEARNING_INPUT_MANIFEST_VERIFY_FILES)) {
+        List<FileStatus> recordedFiles = new ArrayList<>(manifest.splitFiles);
+        for (List<FileStatus> fileStatuses : manifest.files.values()) {
+          recordedFiles.addAll(fileStatuses);
+        }
+        checks.addAll(getFileChecks(conf, recordedFiles, manifestPath));
+      }
+      if (!runChecks(conf, checks)) {
+        return null;
+      }
+      LOG.info("Loaded input manifest " + manifestPath + " with " + manifest.directories.size() + " directories, "
+          + manifest.files.size() + " aliases and " + splitNum + " splits, cost " + (System.currentTimeMillis() - start) + " ms.");
+      return manifest;
+    } catch (IOException | ClassNotFoundException e) {
+      LOG.warn("Load input manifest " + manifestPath + " failed, ignore it.", e);
+      return null;
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
+  /**
+   * Runs the checks on a pool of the size of the listing threads, returns false as soon as one of them
+   * fails.
+   */
+  private static boolean runChecks(Configuration conf, List<Callable<Boolean>> checks) throws IOException {
+    if (checks.isEmpty()) {
+      return true;
+    }
+    int threadNum = Math.max(1, Math.min(checks.size(), conf.getInt(XLearningConfiguration.XLEARNING_INPUT_LIST_THREAD_NUMS,
+        XLearningConfiguration.DEFAULT_XLEARNING_INPUT_LIST_THREAD_NUMS)));
+    ExecutorService executor = Executors.newFixedThreadPool(threadNum, new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("Check-Input-Manifest-Thread #%d")
+        .build());
+    try {
+      CompletionService<Boolean> completionService = new ExecutorCompletionService<>(executor);
+      for (Callable<Boolean> check : checks) {
+        completionService.submit(check);
+      }
+      for (int i = 0; i < checks.size(); i++) {
+        if (!completionService.take().get()) {
+          return false;
+        }
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Checking the input manifest is interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Checking the input manifest failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * One check per parent dir of the files, listing the dir if there are several of them in it, and looking
+   * up the single file otherwise.
+   */
+  private static List<Callable<Boolean>> getFileChecks(Configuration conf, List<FileStatus> recordedFiles, Path manifestPath) {
+    Map<Path, List<FileStatus>> parentFiles = new LinkedHashMap<>();
+    for (FileStatus recorded : recordedFiles) {
+      Path parent = recorded.getPath().getParent();
+      List<FileStatus> children = parentFiles.get(parent);
+      if (children == null) {
+        children = new ArrayList<>();
+        parentFiles.put(parent, children);
+      }
+      children.add(recorded);
+    }
+    List<Callable<Boolean>> checks = new ArrayList<>(parentFiles.size());
+    for (Map.Entry<Path, List<FileStatus>> parent : parentFiles.entrySet()) {
+      checks.add(new FileCheck(conf, parent.getKey(), parent.getValue(), manifestPath));
+    }
+    return checks;
+  }
+
+  private static class DirectoryCheck implements Callable<Boolean> {
+
+    private final Configuration conf;
+
+    private final Path dir;
+
+    private final long modificationTime;
+
+    private final Path manifestPath;
+
+    DirectoryCheck(Configuration conf, Path dir, long modificationTime, Path manifestPath) {
+      this.conf = conf;
+      this.dir = dir;
+      this.modificationTime = modificationTime;
+      this.manifestPath = manifestPath;
+    }
+
+    @Override
+    public Boolean call() throws IOException {
+      long current;
+      try {
+        current = dir.getFileSystem(conf).getFileStatus(dir).getModificationTime();
+      } catch (FileNotFoundException e) {
+        current = -1L;
+      }
+      if (current != modificationTime) {
+        LOG.info("Input dir " + dir + " changed since the input manifest " + manifestPath + " was written, ignore it.");
+        return false;
+      }
+      return true;
+    }
+  }
+
+  private static class FileCheck implements Callable<Boolean> {
+
+    private final Configuration conf;
+
+    private final Path parent;
+
+    private final List<FileStatus> recordedFiles;
+
+    private final Path manifestPath;
+
+    FileCheck(Configuration conf, Path parent, List<FileStatus> recordedFiles, Path manifestPath) {
+      this.conf = conf;
+      this.parent = parent;
+      this.recordedFiles = recordedFiles;
+      this.manifestPath = manifestPath;
+    }
+
+    @Override
+    public Boolean call() throws IOException {
+      FileSystem fs = parent.getFileSystem(conf);
+      Map<String, FileStatus> current = new HashMap<>();
+      try {
+        FileStatus[] statuses = recordedFiles.size() == 1
+            ? new FileStatus[]{fs.getFileStatus(recordedFiles.get(0).getPath())}
+            : fs.listStatus(parent);
+        for (FileStatus status : statuses) {
+          current.put(status.getPath().toUri().getPath(), status);
+        }
+      } catch (FileNotFoundException e) {
+        LOG.debug("Input path under " + parent + " not found.", e);
+      }
+      for (FileStatus recorded : recordedFiles) {
+        FileStatus status = current.get(recorded.getPath().toUri().getPath());
+        if (status == null || status.getLen() != recorded.getLen()
+            || status.getModificationTime() != recorded.getModificationTime()) {
+          LOG.info("Input file " + recorded.getPath() + " changed since the input manifest " + manifestPath + " was written, ignore it.");
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Writes the manifest to a temp file first and renames it into place, so a reader never sees a
+   * partial manifest. Failures are only logged since the manifest is an optimization.
+   */
+  void save(Configuration conf, Path manifestPath) {
+    Path tmpPath = new Path(manifestPath.getParent(), "." + manifestPath.getName() + "." + System.currentTimeMillis());
+    DataOutputStream out = null;
+    try {
+      FileSystem fs = manifestPath.getFileSystem(conf);
+      FSDataOutputStream fsOut = fs.create(tmpPath, true);
+      out = new DataOutputStream(new GZIPOutputStream(fsOut));
+      out.writeInt(VERSION);
+      out.writeInt(directories.size());
+      for (Map.Entry<String, Long> dir : directories.entrySet()) {
+        Text.writeString(out, dir.getKey());
+        out.writeLong(dir.getValue());
+      }
+      out.writeInt(files.size());
+      for (Map.Entry<String, List<FileStatus>> alias : files.entrySet()) {
+        Text.writeString(out, alias.getKey());
+        out.writeInt(alias.getValue().size());
+        for (FileStatus fileStatus : alias.getValue()) {
+          // write the plain status, the block locations of a LocatedFileStatus are fetched again if needed
+          new FileStatus(fileStatus).write(out);
+        }
+      }
+      out.writeInt(splitFiles.size());
+      for (FileStatus fileStatus : splitFiles) {
+        new FileStatus(fileStatus).write(out);
+      }
+      out.writeInt(splits.length);
+      if (splits.length > 0) {
+        Text.writeString(out, splits[0].getClass().getName());
+        for (InputSplit split : splits) {
+          split.write(out);
+        }
+      }
+      out.close();
+      out = null;
+      fs.delete(manifestPath, false);
+      if (!fs.rename(tmpPath, manifestPath)) {
+        throw new IOException("Rename " + tmpPath + " to " + manifestPath + " failed");
+      }
+      LOG.info("Saved input manifest " + manifestPath);
+    } catch (IOException e) {
+      LOG.warn("Save input manifest " + manifestPath + " failed.", e);
+      try {
+        tmpPath.getFileSystem(conf).delete(tmpPath, false);
+      } catch (IOException ignored) {
+      }
+    } finally {
+      IOUtils.closeStream(out);
+    }
+  }
+}
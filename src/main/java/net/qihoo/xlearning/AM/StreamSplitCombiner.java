@@ -0,0 +1,126 @@
+package net.qihoo.xlearning.AM;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.lib.CombineFileSplit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Packs the small file splits of the STREAM strategy into multi-file splits of about the target size, so
+ * a directory of many small files is not read as one split per file. Like the CombineFileInputFormat, the
+ * splits are first packed node by node, keeping only the full multi-file splits, and the rest are packed
+ * in their order regardless of the nodes. The containers read the files of a multi-file split one by one.
+ */
+class StreamSplitCombiner {
+
+  private static final Log LOG = LogFactory.getLog(StreamSplitCombiner.class);
+
+  private StreamSplitCombiner() {
+  }
+
+  /**
+   * Returns the splits as multi-file splits, all of the same class so the manifest can store them. The
+   * splits are returned as is if any of them is not a file split.
+   */
+  static InputSplit[] combine(JobConf jobConf, InputSplit[] splits, long targetSize) throws IOException {
+    for (InputSplit split : splits) {
+      if (!(split instanceof FileSplit)) {
+        LOG.warn("Input split " + split + " is not a file split, skip combining the input splits.");
+        return splits;
+      }
+    }
+    List<InputSplit> combined = new ArrayList<>();
+    Map<String, List<FileSplit>> nodeSplits = new LinkedHashMap<>();
+    List<FileSplit> rest = new ArrayList<>();
+    for (InputSplit split : splits) {
+      FileSplit fileSplit = (FileSplit) split;
+      if (fileSplit.getLength() >= targetSize) {
+        List<FileSplit> single = new ArrayList<>();
+        single.add(fileSplit);
+        combined.add(toCombineFileSplit(jobConf, single, fileSplit.getLocations()));
+        continue;
+      }
+      rest.add(fileSplit);
+      for (String host : fileSplit.getLocations()) {
+        List<FileSplit> hostSplits = nodeSplits.get(host);
+        if (hostSplits == null) {
+          hostSplits = new ArrayList<>();
+          nodeSplits.put(host, hostSplits);
+        }
+        hostSplits.add(fileSplit);
+      }
+    }
+
+    Map<FileSplit, Boolean> packed = new IdentityHashMap<>();
+    for (Map.Entry<String, List<FileSplit>> node : nodeSplits.entrySet()) {
+      List<FileSplit> parts = new ArrayList<>();
+      long size = 0L;
+      for (FileSplit split : node.getValue()) {
+        if (packed.containsKey(split)) {
+          continue;
+        }
+        parts.add(split);
+        size += split.getLength();
+        if (size >= targetSize) {
+          for (FileSplit part : parts) {
+            packed.put(part, Boolean.TRUE);
+          }
+          combined.add(toCombineFileSplit(jobConf, parts, new String[]{node.getKey()}));
+          parts = new ArrayList<>();
+          size = 0L;
+        }
+      }
+    }
+
+    List<FileSplit> parts = new ArrayList<>();
+    Set<String> hosts = new LinkedHashSet<>();
+    long size = 0L;
+    for (FileSplit split : rest) {
+      if (packed.containsKey(split)) {
+        continue;
+      }
+      parts.add(split);
+      for (String host : split.getLocations()) {
+        hosts.add(host);
+      }
+      size += split.getLength();
+      if (size >= targetSize) {
+        combined.add(toCombineFileSplit(jobConf, parts, hosts.toArray(new String[hosts.size()])));
+        parts = new ArrayList<>();
+        hosts = new LinkedHashSet<>();
+        size = 0L;
+      }
+    }
+    if (!parts.isEmpty()) {
+      combined.add(toCombineFileSplit(jobConf, parts, hosts.toArray(new String[hosts.size()])));
+    }
+    LOG.info("Combined " + splits.length + " input splits into " + combined.size() + " splits of about "
+        + targetSize + " bytes.");
+    return combined.toArray(new InputSplit[combined.size()]);
+  }
+
+  private static CombineFileSplit toCombineFileSplit(JobConf jobConf, List<FileSplit> parts, String[] locations) {
+    Path[] paths = new Path[parts.size()];
+    long[] starts = new long[parts.size()];
+    long[] lengths = new long[parts.size()];
+    for (int i = 0; i < paths.length; i++) {
+      FileSplit part = parts.get(i);
+      paths[i] = part.getPath();
+      starts[i] = part.getStart();
+      lengths[i] = part.getLength();
+    }
+    return new CombineFileSplit(jobConf, paths, starts, lengths, locations);
+  }
+}
@@ -0,0 +1,162 @@
+package net.qihoo.xlearning.AM;
+
+import net.qihoo.xlearning.common.InputSplitLease;
+import net.qihoo.xlearning.container.XLearningContainerId;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapred.InputSplit;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hands out the stream input splits to the containers one at a time under the dynamic split assignment,
+ * so the faster containers read more of them. Every epoch goes through all the splits once. The leases of a
+ * container are renewed on each of its heartbeats, so a split read slowly under the backpressure of the user
+ * process keeps its lease. A leased split is requeued when its lease expires because its container stopped
+ * heartbeating, or when its container fails, and is then leased again to any container.
+ */
+class StreamSplitQueue {
+
+  private static final Log LOG = LogFactory.getLog(StreamSplitQueue.class);
+
+  private final InputSplit[] splits;
+
+  private final long leaseTimeout;
+
+  private final Map<Integer, Epoch> epochs;
+
+  StreamSplitQueue(InputSplit[] splits, long leaseTimeout) {
+    this.splits = splits;
+    this.leaseTimeout = leaseTimeout;
+    this.epochs = new HashMap<>();
+  }
+
+  int getSplitNum() {
+    return splits.length;
+  }
+
+  synchronized InputSplitLease lease(XLearningContainerId containerId, int epoch) {
+    Epoch state = getEpoch(epoch);
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<Integer, Lease>> leases = state.leased.entrySet().iterator();
+    while (leases.hasNext()) {
+      Map.Entry<Integer, Lease> lease = leases.next();
+      if (lease.getValue().deadline < now) {
+        LOG.info("Lease of split " + lease.getKey() + " of epoch " + epoch + " by " + lease.getValue().containerId
+            + " expired, requeue it.");
+        if (!state.finished.contains(lease.getKey())) {
+          state.pending.addFirst(lease.getKey());
+        }
+        leases.remove();
+      }
+    }
+    Integer splitId = state.pending.pollFirst();
+    if (splitId == null) {
+      return new InputSplitLease(state.leased.isEmpty() ? InputSplitLease.FINISHED : InputSplitLease.WAIT, null);
+    }
+    state.leased.put(splitId, new Lease(containerId, now + leaseTimeout));
+    LOG.debug("Lease split " + splitId + " of epoch " + epoch + " to " + containerId);
+    return new InputSplitLease(splitId, splits[splitId]);
+  }
+
+  /**
+   * Extends the leases of the container, called on its heartbeats.
+   */
+  synchronized void renew(XLearningContainerId containerId) {
+    long deadline = System.currentTimeMillis() + leaseTimeout;
+    for (Epoch epoch : epochs.values()) {
+      for (Lease lease : epoch.leased.values()) {
+        if (lease.containerId.equals(containerId)) {
+          lease.deadline = deadline;
+        }
+      }
+    }
+  }
+
+  /**
+   * Marks the split as read, returns false if it was already read by another container after its lease
+   * expired. Only the lease of the container itself is released, a lease of the split taken by another
+   * container in the meantime is kept until that container finishes the split too or fails.
+   */
+  synchronized boolean finish(XLearningContainerId containerId, int epoch, int splitId) {
+    Epoch state = getEpoch(epoch);
+    Lease lease = state.leased.get(splitId);
+    if (lease != null && lease.containerId.equals(containerId)) {
+      state.leased.remove(splitId);
+    }
+    if (!state.finished.add(splitId)) {
+      return false;
+    }
+    if (lease == null) {
+      // the lease expired and the split was requeued, but the first container still finished it
+      state.pending.remove(splitId);
+    }
+    return true;
+  }
+
+  /**
+   * Requeues the splits leased by the failed container.
+   */
+  synchronized void requeue(XLearningContainerId containerId) {
+    for (Map.Entry<Integer, Epoch> epoch : epochs.entrySet()) {
+      Iterator<Map.Entry<Integer, Lease>> leases = epoch.getValue().leased.entrySet().iterator();
+      while (leases.hasNext()) {
+        Map.Entry<Integer, Lease> lease = leases.next();
+        if (lease.getValue().containerId.equals(containerId)) {
+          if (!epoch.getValue().finished.contains(lease.getKey())) {
+            LOG.info("Container " + containerId + " failed, requeue split " + lease.getKey() + " of epoch " + epoch.getKey());
+            epoch.getValue().pending.addFirst(lease.getKey());
+          }
+          leases.remove();
+        }
+      }
+    }
+  }
+
+  synchronized Set<XLearningContainerId> getLeaseHolders() {
+    Set<XLearningContainerId> holders = new HashSet<>();
+    for (Epoch epoch : epochs.values()) {
+      for (Lease lease : epoch.leased.values()) {
+        holders.add(lease.containerId);
+      }
+    }
+    return holders;
+  }
+
+  private Epoch getEpoch(int epoch) {
+    Epoch state = epochs.get(epoch);
+    if (state == null) {
+      state = new Epoch(splits.length);
+      epochs.put(epoch, state);
+    }
+    return state;
+  }
+
+  private static class Epoch {
+    private final Deque<Integer> pending = new ArrayDeque<>();
+    private final Map<Integer, Lease> leased = new HashMap<>();
+    private final Set<Integer> finished = new HashSet<>();
+
+    Epoch(int splitNum) {
+      for (int i = 0; i < splitNum; i++) {
+        pending.addLast(i);
+      }
+    }
+  }
+
+  private static class Lease {
+    private final XLearningContainerId containerId;
+    private long deadline;
+
+    Lease(XLearningContainerId containerId, long deadline) {
+      this.containerId = containerId;
+      this.deadline = deadline;
+    }
+  }
+}
@@ -23,6 +23,10 @@ public interface ApplicationContainerProtocol extends VersionedProtocol {
 
   InputSplit[] getStreamInputSplit(XLearningContainerId containerId);
 
+  InputSplitLease leaseStreamInputSplit(XLearningContainerId containerId, int epoch);
+
+  void finishStreamInputSplit(XLearningContainerId containerId, int epoch, int splitId);
+
   OutputInfo[] getOutputLocation();
 
   void reportTensorBoardURL(String url);
@@ -1,6 +1,7 @@
 package net.qihoo.xlearning.api;
 
 import net.qihoo.xlearning.common.InputInfo;
+import net.qihoo.xlearning.common.InputSplitLease;
 import net.qihoo.xlearning.common.Message;
 import net.qihoo.xlearning.common.OutputInfo;
 import net.qihoo.xlearning.container.XLearningContainerId;
@@ -33,6 +34,12 @@ public interface ApplicationContext {
 
   List<InputSplit> getStreamInputs(XLearningContainerId containerId);
 
+  InputSplitLease leaseStreamInputSplit(XLearningContainerId containerId, int epoch);
+
+  void finishStreamInputSplit(XLearningContainerId containerId, int epoch, int splitId);
+
+  void renewStreamInputSplitLeases(XLearningContainerId containerId);
+
   List<OutputInfo> getOutputs();
 
   LinkedBlockingQueue<Message> getMessageQueue();
@@ -47,6 +54,10 @@ public interface ApplicationContext {
 
   Map<XLearningContainerId, String> getMapedTaskID();
 
+  Map<XLearningContainerId, Long> getContainersInputBytes();
+
+  Map<XLearningContainerId, Integer> getContainersInputSplitNum();
+
   Map<XLearningContainerId, ConcurrentHashMap<String, LinkedBlockingDeque<Object>>> getContainersCpuMetrics();
 
   int getSavingModelStatus();
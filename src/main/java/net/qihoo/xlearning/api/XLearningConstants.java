@@ -44,6 +44,8 @@ public interface XLearningConstants {
 
     XLEARNING_INPUT_FILE_LIST("INPUT_FILE_LIST"),
 
+    XLEARNING_STREAM_RING_BUFFER("XLEARNING_STREAM_RING_BUFFER"),
+
     XLEARNING_STAGING_LOCATION("XLEARNING_STAGING_LOCATION"),
 
     XLEARNING_CACHE_FILE_LOCATION("XLEARNING_CACHE_FILE_LOCATION"),
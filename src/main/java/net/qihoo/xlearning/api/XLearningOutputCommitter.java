@@ -0,0 +1,27 @@
+package net.qihoo.xlearning.api;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+
+/**
+ * Finalises the HDFS outputs of an application. The output of every succeeded worker container is committed
+ * from its temporary path to its final path, by the AM for all the workers once they succeeded, on a pool of
+ * threads, or by each container itself when it exits successfully if the container commit is enabled. The
+ * job commit then finishes an output once all its tasks are committed. An implementation implementing
+ * Configurable is given the configuration of the application.
+ */
+public interface XLearningOutputCommitter {
+
+  /**
+   * Commits the output of one container. Called concurrently for different containers, and may be called
+   * for a container without output, in which case the task output does not exist.
+   */
+  void commitTask(FileSystem fs, Path taskOutput, Path finalOutput) throws IOException;
+
+  /**
+   * Commits an output after the outputs of all the containers are committed.
+   */
+  void commitJob(FileSystem fs, Path output) throws IOException;
+}
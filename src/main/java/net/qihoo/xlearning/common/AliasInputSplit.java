@@ -0,0 +1,70 @@
+package net.qihoo.xlearning.common;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A stream input split tagged with the alias of its input, so the container reads it with the inputformat
+ * of that input and delivers its records to the right stream when the STREAM strategy has several inputs.
+ */
+public class AliasInputSplit implements InputSplit {
+
+  private String alias;
+
+  private InputSplit split;
+
+  public AliasInputSplit() {
+  }
+
+  public AliasInputSplit(String alias, InputSplit split) {
+    this.alias = alias;
+    this.split = split;
+  }
+
+  public String getAlias() {
+    return alias;
+  }
+
+  public InputSplit getSplit() {
+    return split;
+  }
+
+  @Override
+  public long getLength() throws IOException {
+    return split.getLength();
+  }
+
+  @Override
+  public String[] getLocations() throws IOException {
+    return split.getLocations();
+  }
+
+  @Override
+  public void write(DataOutput dataOutput) throws IOException {
+    Text.writeString(dataOutput, alias);
+    Text.writeString(dataOutput, split.getClass().getName());
+    split.write(dataOutput);
+  }
+
+  @Override
+  public void readFields(DataInput dataInput) throws IOException {
+    this.alias = Text.readString(dataInput);
+    String splitClass = Text.readString(dataInput);
+    try {
+      this.split = ReflectionUtils.newInstance(Class.forName(splitClass).asSubclass(InputSplit.class), null);
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Input split class " + splitClass + " not found", e);
+    }
+    split.readFields(dataInput);
+  }
+
+  @Override
+  public String toString() {
+    return alias + ":" + split;
+  }
+}
@@ -0,0 +1,139 @@
+package net.qihoo.xlearning.common;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Buffers the bytes written to it in two buffers and writes a full buffer to the underlying stream on the
+ * writer thread while the other one is filled, so a slow write, e.g. a pipeline recovery of HDFS, only
+ * blocks the writes to this stream once the other buffer is full as well.
+ */
+class AsyncBufferedOutputStream extends OutputStream {
+
+  private final OutputStream out;
+
+  private final ExecutorService writer;
+
+  private final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(2);
+
+  private byte[] buffer;
+
+  private int count;
+
+  private Future<?> lastWrite;
+
+  private volatile Throwable error;
+
+  private boolean closed;
+
+  /**
+   * @param writer the single thread writing the buffers, may be shared by several streams
+   */
+  AsyncBufferedOutputStream(OutputStream out, ExecutorService writer, int bufferSize) {
+    this.out = out;
+    this.writer = writer;
+    this.buffer = new byte[Math.max(1, bufferSize)];
+    this.freeBuffers.add(new byte[buffer.length]);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (count == buffer.length) {
+      submitBuffer();
+    }
+    buffer[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream is closed");
+    }
+    while (len > 0) {
+      if (count == buffer.length) {
+        submitBuffer();
+      }
+      int n = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, n);
+      count += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (count > 0) {
+      submitBuffer();
+    }
+    waitForWrites();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      if (count > 0) {
+        submitBuffer();
+      }
+      waitForWrites();
+    } finally {
+      closed = true;
+      out.close();
+    }
+  }
+
+  private void submitBuffer() throws IOException {
+    checkError();
+    final byte[] data = buffer;
+    final int length = count;
+    lastWrite = writer.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (error == null) {
+            out.write(data, 0, length);
+          }
+        } catch (Throwable e) {
+          error = e;
+        } finally {
+          freeBuffers.add(data);
+        }
+      }
+    });
+    try {
+      buffer = freeBuffers.take();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for the write of the output");
+    }
+    count = 0;
+  }
+
+  private void waitForWrites() throws IOException {
+    if (lastWrite != null) {
+      try {
+        lastWrite.get();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while waiting for the write of the output");
+      } catch (ExecutionException e) {
+        error = e.getCause();
+      }
+    }
+    checkError();
+  }
+
+  private void checkError() throws IOException {
+    if (error != null) {
+      throw new IOException("Write the output failed", error);
+    }
+  }
+}
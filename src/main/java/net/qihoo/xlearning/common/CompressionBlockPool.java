@@ -0,0 +1,74 @@
+package net.qihoo.xlearning.common;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The blocks of the {@link ParallelCompressionOutputStream}s of an output format, shared by all the streams
+ * it writes at the same time, so the memory of the blocks being filled, compressed or written is bounded per
+ * container instead of per file. Every stream holds at most one block it is still filling, and the streams
+ * are usually filled by one thread, so the bound is raised to one block per open stream plus one; otherwise
+ * a stream waiting for a block could wait on the partial blocks of the others forever.
+ */
+class CompressionBlockPool {
+
+  private final int blockSize;
+
+  private final int maxBlocks;
+
+  private final Deque<byte[]> freeBlocks = new ArrayDeque<>();
+
+  private int usedBlocks;
+
+  private int streams;
+
+  /**
+   * @param maxBlocks number of the blocks taken at most, unless there are more open streams
+   */
+  CompressionBlockPool(int blockSize, int maxBlocks) {
+    this.blockSize = Math.max(1, blockSize);
+    this.maxBlocks = Math.max(2, maxBlocks);
+  }
+
+  int getBlockSize() {
+    return blockSize;
+  }
+
+  synchronized void register() {
+    streams++;
+  }
+
+  synchronized void unregister() {
+    streams--;
+    notifyAll();
+  }
+
+  /**
+   * Returns a free block, waiting for one to be released if all of them are taken.
+   */
+  synchronized byte[] take() throws InterruptedIOException {
+    while (usedBlocks >= getLimit()) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while waiting for the compression of the output");
+      }
+    }
+    usedBlocks++;
+    byte[] block = freeBlocks.pollFirst();
+    return block == null ? new byte[blockSize] : block;
+  }
+
+  synchronized void release(byte[] block) {
+    usedBlocks--;
+    if (usedBlocks + freeBlocks.size() < getLimit()) {
+      freeBlocks.addFirst(block);
+    }
+    notifyAll();
+  }
+
+  private int getLimit() {
+    return Math.max(maxBlocks, streams + 1);
+  }
+}
@@ -15,6 +15,7 @@ public class HeartbeatRequest implements Writable {
   private String progressLog;
   private String containersStartTime;
   private String containersFinishTime;
+  private String downloadStatistics;
 
   public HeartbeatRequest() {
     xlearningContainerStatus = XLearningContainerStatus.UNDEFINED;
@@ -22,6 +23,7 @@ public class HeartbeatRequest implements Writable {
     progressLog = "";
     containersStartTime = "";
     containersFinishTime = "";
+    downloadStatistics = "";
   }
 
   public void setXLearningContainerStatus(XLearningContainerStatus xlearningContainerStatus) {
@@ -64,6 +66,14 @@ public class HeartbeatRequest implements Writable {
     return this.containersFinishTime;
   }
 
+  public void setDownloadStatistics(String downloadStatistics) {
+    this.downloadStatistics = downloadStatistics;
+  }
+
+  public String getDownloadStatistics() {
+    return this.downloadStatistics;
+  }
+
   @Override
   public void write(DataOutput dataOutput) throws IOException {
     WritableUtils.writeEnum(dataOutput, this.xlearningContainerStatus);
@@ -71,6 +81,7 @@ public class HeartbeatRequest implements Writable {
     Text.writeString(dataOutput, this.progressLog);
     Text.writeString(dataOutput, this.containersStartTime);
     Text.writeString(dataOutput, this.containersFinishTime);
+    Text.writeString(dataOutput, this.downloadStatistics);
   }
 
   @Override
@@ -80,6 +91,7 @@ public class HeartbeatRequest implements Writable {
     this.progressLog = Text.readString(dataInput);
     this.containersStartTime = Text.readString(dataInput);
     this.containersFinishTime = Text.readString(dataInput);
+    this.downloadStatistics = Text.readString(dataInput);
   }
 
 }
@@ -16,6 +16,16 @@ public class InputInfo implements Writable {
 
   private List<Path> paths = new ArrayList<>();
 
+  /**
+   * File lengths known by the AM, aligned with paths. -1 means unknown.
+   */
+  private List<Long> lengths = new ArrayList<>();
+
+  /**
+   * File modification times known by the AM, aligned with paths. -1 means unknown.
+   */
+  private List<Long> modificationTimes = new ArrayList<>();
+
   public InputInfo() {
   }
 
@@ -33,18 +43,40 @@ public class InputInfo implements Writable {
 
   public void setPaths(List<Path> paths) {
     this.paths = paths;
+    this.lengths = new ArrayList<>();
+    this.modificationTimes = new ArrayList<>();
+    for (int i = 0; i < paths.size(); i++) {
+      this.lengths.add(-1L);
+      this.modificationTimes.add(-1L);
+    }
   }
 
   public void addPath(Path path) {
+    addPath(path, -1L, -1L);
+  }
+
+  public void addPath(Path path, long length, long modificationTime) {
     paths.add(path);
+    lengths.add(length);
+    modificationTimes.add(modificationTime);
+  }
+
+  public long getLength(int index) {
+    return lengths.get(index);
+  }
+
+  public long getModificationTime(int index) {
+    return modificationTimes.get(index);
   }
 
   @Override
   public void write(DataOutput dataOutput) throws IOException {
     Text.writeString(dataOutput, aliasName);
     dataOutput.writeInt(paths.size());
-    for (Path p : paths) {
-      Text.writeString(dataOutput, p.toString());
+    for (int i = 0; i < paths.size(); i++) {
+      Text.writeString(dataOutput, paths.get(i).toString());
+      dataOutput.writeLong(lengths.get(i));
+      dataOutput.writeLong(modificationTimes.get(i));
     }
   }
 
@@ -52,9 +84,13 @@ public class InputInfo implements Writable {
   public void readFields(DataInput dataInput) throws IOException {
     this.aliasName = Text.readString(dataInput);
     this.paths = new ArrayList<>();
+    this.lengths = new ArrayList<>();
+    this.modificationTimes = new ArrayList<>();
     int size = dataInput.readInt();
     for (int i = 0; i < size; i++) {
       this.paths.add(new Path(Text.readString(dataInput)));
+      this.lengths.add(dataInput.readLong());
+      this.modificationTimes.add(dataInput.readLong());
     }
   }
 }
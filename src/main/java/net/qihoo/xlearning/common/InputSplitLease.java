@@ -0,0 +1,72 @@
+package net.qihoo.xlearning.common;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A stream input split leased by the AM to a container under the dynamic split assignment. The container
+ * reports the split id back once the split is read, a split whose lease expires or whose container fails
+ * is leased to another container again.
+ */
+public class InputSplitLease implements Writable {
+
+  /**
+   * No split is available now, but leased splits may still be requeued.
+   */
+  public static final int WAIT = -1;
+
+  /**
+   * All the splits of the epoch are read.
+   */
+  public static final int FINISHED = -2;
+
+  private int splitId;
+
+  private InputSplit split;
+
+  public InputSplitLease() {
+  }
+
+  public InputSplitLease(int splitId, InputSplit split) {
+    this.splitId = splitId;
+    this.split = split;
+  }
+
+  public int getSplitId() {
+    return splitId;
+  }
+
+  public InputSplit getSplit() {
+    return split;
+  }
+
+  @Override
+  public void write(DataOutput dataOutput) throws IOException {
+    dataOutput.writeInt(splitId);
+    if (splitId >= 0) {
+      Text.writeString(dataOutput, split.getClass().getName());
+      split.write(dataOutput);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput dataInput) throws IOException {
+    this.splitId = dataInput.readInt();
+    this.split = null;
+    if (splitId >= 0) {
+      String splitClass = Text.readString(dataInput);
+      try {
+        this.split = ReflectionUtils.newInstance(Class.forName(splitClass).asSubclass(InputSplit.class), null);
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Input split class " + splitClass + " not found", e);
+      }
+      split.readFields(dataInput);
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package net.qihoo.xlearning.common;
+
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses the bytes written to it in blocks on a pool of threads. Every block is compressed into an
+ * independent stream of the codec, e.g. a gzip member, and the compressed blocks are written to the
+ * underlying stream in order by a single writer thread, so the output is the concatenation of the streams,
+ * which the decompressors of Hadoop and gzip read as one. The blocks are taken from a pool bounding the
+ * blocks not written yet, which may be shared by several streams to bound their memory together.
+ */
+class ParallelCompressionOutputStream extends OutputStream {
+
+  private final OutputStream out;
+
+  private final CompressionCodec codec;
+
+  private final ExecutorService compressors;
+
+  private final ExecutorService writer;
+
+  private final CompressionBlockPool blockPool;
+
+  private final int blockSize;
+
+  private byte[] block;
+
+  private int length;
+
+  private long submittedBlocks;
+
+  private Future<?> lastWrite;
+
+  private volatile Throwable error;
+
+  private boolean closed;
+
+  /**
+   * @param maxBlocks number of the blocks being filled, compressed or written at most
+   */
+  ParallelCompressionOutputStream(OutputStream out, CompressionCodec codec, ExecutorService compressors,
+                                  ExecutorService writer, int blockSize, int maxBlocks) {
+    this(out, codec, compressors, writer, new CompressionBlockPool(blockSize, maxBlocks));
+  }
+
+  /**
+   * @param compressors the pool compressing the blocks, may be shared by several streams
+   * @param writer      the single thread writing the compressed blocks in order, may be shared by several
+   *                    streams
+   * @param blockPool   the blocks of the stream, may be shared by several streams
+   */
+  ParallelCompressionOutputStream(OutputStream out, CompressionCodec codec, ExecutorService compressors,
+                                  ExecutorService writer, CompressionBlockPool blockPool) {
+    this.out = out;
+    this.codec = codec;
+    this.compressors = compressors;
+    this.writer = writer;
+    this.blockPool = blockPool;
+    this.blockSize = blockPool.getBlockSize();
+    blockPool.register();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream is closed");
+    }
+    while (len > 0) {
+      if (block == null) {
+        block = blockPool.take();
+      }
+      int n = Math.min(len, blockSize - length);
+      System.arraycopy(b, off, block, length, n);
+      length += n;
+      off += n;
+      len -= n;
+      if (length == blockSize) {
+        submitBlock();
+      }
+    }
+  }
+
+  /**
+   * Compresses and writes out the bytes written so far, ending the current block early.
+   */
+  @Override
+  public void flush() throws IOException {
+    if (length > 0) {
+      submitBlock();
+    }
+    waitForWrites();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      // an empty output is still written as one empty compressed stream, as the serial codec stream does
+      if (length > 0 || submittedBlocks == 0) {
+        if (block == null) {
+          block = blockPool.take();
+        }
+        submitBlock();
+      }
+      waitForWrites();
+    } finally {
+      closed = true;
+      if (block != null) {
+        // not submitted because of an earlier failure
+        blockPool.release(block);
+        block = null;
+      }
+      blockPool.unregister();
+      out.close();
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    checkError();
+    final byte[] data = block;
+    final int dataLength = length;
+    block = null;
+    length = 0;
+    submittedBlocks++;
+    final Future<ByteArrayOutputStream> compressed = compressors.submit(new Callable<ByteArrayOutputStream>() {
+      @Override
+      public ByteArrayOutputStream call() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(dataLength / 2 + 64);
+        CompressionOutputStream compressionStream = codec.createOutputStream(buffer);
+        compressionStream.write(data, 0, dataLength);
+        compressionStream.close();
+        return buffer;
+      }
+    });
+    lastWrite = writer.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ByteArrayOutputStream buffer = compressed.get();
+          if (error == null) {
+            buffer.writeTo(out);
+          }
+        } catch (ExecutionException e) {
+          error = e.getCause();
+        } catch (Throwable e) {
+          error = e;
+        } finally {
+          blockPool.release(data);
+        }
+      }
+    });
+  }
+
+  private void waitForWrites() throws IOException {
+    if (lastWrite != null) {
+      try {
+        lastWrite.get();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while waiting for the compression of the output");
+      } catch (ExecutionException e) {
+        error = e.getCause();
+      }
+    }
+    checkError();
+  }
+
+  private void checkError() throws IOException {
+    if (error != null) {
+      throw new IOException("Compress the output failed", error);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package net.qihoo.xlearning.common;
+
+import net.qihoo.xlearning.api.XLearningOutputCommitter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * The default output committer, renaming the temporary output of every container to its final path and
+ * then deleting the temporary directory and writing the _SUCCESS marker of the output.
+ */
+public class RenameOutputCommitter implements XLearningOutputCommitter {
+
+  private static final Log LOG = LogFactory.getLog(RenameOutputCommitter.class);
+
+  @Override
+  public void commitTask(FileSystem fs, Path taskOutput, Path finalOutput) throws IOException {
+    // rename first and only look for the task output if it failed, one call to the namenode per container
+    boolean renamed;
+    try {
+      renamed = fs.rename(taskOutput, finalOutput);
+    } catch (FileNotFoundException e) {
+      renamed = false;
+    }
+    if (renamed) {
+      LOG.info("Move from " + taskOutput + " to " + finalOutput);
+    } else if (fs.exists(taskOutput)) {
+      throw new IOException("Move from " + taskOutput + " to " + finalOutput + " failed");
+    }
+  }
+
+  @Override
+  public void commitJob(FileSystem fs, Path output) throws IOException {
+    fs.delete(new Path(output, "_temporary"), true);
+    fs.createNewFile(new Path(output, "_SUCCESS"));
+  }
+}
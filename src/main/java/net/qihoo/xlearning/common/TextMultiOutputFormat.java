@@ -1,7 +1,8 @@
 package net.qihoo.xlearning.common;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.qihoo.xlearning.conf.XLearningConfiguration;
 import org.apache.hadoop.fs.FSDataOutputStream;
-import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.compress.CompressionCodec;
@@ -12,8 +13,15 @@ import org.apache.hadoop.util.ReflectionUtils;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.text.NumberFormat;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class TextMultiOutputFormat<K, V> extends TextOutputFormat<K, V> {
   public static final String MR_REDUCE_MAX_FILE_PER_FILE =
@@ -101,40 +109,171 @@ public class TextMultiOutputFormat<K, V> extends TextOutputFormat<K, V> {
   }
 
   private long splitSize;
+  private long rolloverRecords;
+  private long rolloverInterval;
   CompressionCodec codec;
   JobConf jobConf;
   Progressable jobProgress;
-  String fileName;
-  int fileNum = 0;
+  int writeBufferSize;
+  CompressionBlockPool compressionBlocks;
+  ExecutorService compressors;
+  ExecutorService outputWriter;
+  ExecutorService fileOpener;
+  int openWriters;
 
+  /**
+   * Writes the files of one name. The writers of a format share its compressor pool, its writer thread,
+   * its file opener thread and its compression blocks, which are shut down once all of them are closed.
+   */
   public class MultiSplitRecordWriter<K, V>
       implements RecordWriter<K, V> {
     private boolean ignoreSeparatorOnNull;
     protected NewDataOutputStream out;
     private String keyValueSeparator;
     LineRecordWriter<K, V> writer;
+    private final String fileName;
+    private int fileNum = 0;
+    private Future<FSDataOutputStream> nextFile;
+    private int nextFileNum;
+    private Future<?> lastClose;
+    private volatile Throwable closeError;
+    private long records;
+    private long openTime;
 
-    public MultiSplitRecordWriter(NewDataOutputStream out, String keyValueSeparator, boolean ignoreSeparatorOnNull) {
-      this.out = out;
+    public MultiSplitRecordWriter(String fileName, String keyValueSeparator, boolean ignoreSeparatorOnNull)
+        throws IOException {
+      this.fileName = fileName;
       this.keyValueSeparator = keyValueSeparator;
       this.ignoreSeparatorOnNull = ignoreSeparatorOnNull;
+      this.out = new NewDataOutputStream(createOutputStream(openNextFile()));
       this.writer = new LineRecordWriter<K, V>(out, keyValueSeparator);
+      this.openTime = System.currentTimeMillis();
     }
 
     public synchronized void write(K key, V value)
         throws IOException {
-      if (splitSize < out.getSize()) {
-        //	  writer.flush();
-        writer.close(null);
-        out = new NewDataOutputStream(codec.createOutputStream(createFile()));
-        writer = new LineRecordWriter<K, V>(out, keyValueSeparator);
+      if (splitSize < out.getSize()
+          || (rolloverRecords > 0 && records >= rolloverRecords)
+          || (rolloverInterval > 0 && records > 0 && System.currentTimeMillis() - openTime >= rolloverInterval)) {
+        rollover();
       }
       writer.write(key, value);
+      records++;
+    }
+
+    private void rollover() throws IOException {
+      checkCloseError();
+      final LineRecordWriter<K, V> oldWriter = writer;
+      if (fileOpener == null) {
+        oldWriter.close(null);
+      } else {
+        // the finished file is closed on the opener thread, behind the open of the next file
+        lastClose = fileOpener.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              oldWriter.close(null);
+            } catch (Throwable e) {
+              closeError = e;
+            }
+          }
+        });
+      }
+      out = new NewDataOutputStream(createOutputStream(openNextFile()));
+      writer = new LineRecordWriter<K, V>(out, keyValueSeparator);
+      records = 0L;
+      openTime = System.currentTimeMillis();
     }
 
     public synchronized void close(Reporter reporter) throws IOException {
-      out.close();
-      writer.close(reporter);
+      try {
+        writer.close(reporter);
+        if (fileOpener != null) {
+          discardNextFile();
+          if (lastClose != null) {
+            try {
+              lastClose.get();
+            } catch (InterruptedException e) {
+              throw new InterruptedIOException("Interrupted while waiting for the close of the output files");
+            } catch (ExecutionException e) {
+              closeError = e.getCause();
+            }
+          }
+          checkCloseError();
+        }
+      } finally {
+        releaseWriter();
+      }
+    }
+
+    public FSDataOutputStream createFile()
+        throws IOException {
+      return createFile(fileNum++);
+    }
+
+    private Path getFilePath(int num) throws IOException {
+      return FileOutputFormat.getTaskOutputPath(jobConf, fileName + getFileExtention(num)
+          + (codec == null ? "" : codec.getDefaultExtension()));
+    }
+
+    private FSDataOutputStream createFile(int num) throws IOException {
+      Path file = getFilePath(num);
+      FileSystem fs = file.getFileSystem(jobConf);
+      return fs.create(file, null);
+    }
+
+    /**
+     * Returns the next output file. With the asynchronous writes the file is opened in the background while
+     * the previous one is written, and the one after it is opened right away.
+     */
+    FSDataOutputStream openNextFile() throws IOException {
+      if (fileOpener == null) {
+        return createFile();
+      }
+      if (nextFile == null) {
+        preOpenFile();
+      }
+      FSDataOutputStream fileOut = getNextFile();
+      preOpenFile();
+      return fileOut;
+    }
+
+    private void preOpenFile() {
+      final int num = fileNum++;
+      nextFileNum = num;
+      nextFile = fileOpener.submit(new Callable<FSDataOutputStream>() {
+        @Override
+        public FSDataOutputStream call() throws IOException {
+          return createFile(num);
+        }
+      });
+    }
+
+    private FSDataOutputStream getNextFile() throws IOException {
+      try {
+        return nextFile.get();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while waiting for the open of the output file");
+      } catch (ExecutionException e) {
+        throw new IOException("Open the output file failed", e.getCause());
+      }
+    }
+
+    private void discardNextFile() throws IOException {
+      if (nextFile == null) {
+        return;
+      }
+      FSDataOutputStream unused = getNextFile();
+      nextFile = null;
+      unused.close();
+      Path file = getFilePath(nextFileNum);
+      file.getFileSystem(jobConf).delete(file, false);
+    }
+
+    private void checkCloseError() throws IOException {
+      if (closeError != null) {
+        throw new IOException("Close the output file failed", closeError);
+      }
     }
 
   }
@@ -150,49 +289,104 @@ public class TextMultiOutputFormat<K, V> extends TextOutputFormat<K, V> {
     return "-" + numFormat.format(num);
   }
 
-  @Override
-  public void checkOutputSpecs(FileSystem ignored, JobConf job)
-      throws FileAlreadyExistsException,
-      InvalidJobConfException, IOException {
-    super.checkOutputSpecs(ignored, job);
-
-    if (!getCompressOutput(job)) {
-      throw new InvalidJobConfException("TextMultiOutputFormat only for compressed mode.");
+  /**
+   * Wraps the file with the codec, compressing it in blocks on the compressor threads if more than one
+   * is configured. The output of the blocks is a valid concatenated stream of the codec, written behind
+   * on the writer thread; otherwise the writes are double buffered if a write buffer size is configured.
+   */
+  public OutputStream createOutputStream(FSDataOutputStream fileOut) throws IOException {
+    if (codec != null && compressors != null) {
+      return new ParallelCompressionOutputStream(fileOut, codec, compressors, outputWriter, compressionBlocks);
     }
-
-  }
-
-  public FSDataOutputStream createFile()
-      throws IOException {
-    Path file;
-
-    file = FileOutputFormat.getTaskOutputPath(jobConf, fileName + getFileExtention(fileNum++) + codec.getDefaultExtension());
-    FileSystem fs = file.getFileSystem(jobConf);
-
-    return fs.create(file, null);
+    OutputStream stream = fileOut;
+    if (writeBufferSize > 0) {
+      stream = new AsyncBufferedOutputStream(fileOut, outputWriter, writeBufferSize);
+    }
+    return codec == null ? stream : codec.createOutputStream(stream);
   }
 
-  public RecordWriter<K, V> getRecordWriter(FileSystem ignored,
-                                            JobConf job,
-                                            String name,
-                                            Progressable progress)
+  /**
+   * Returns a writer of the files of the name. Several writers may be open at the same time, e.g. one per
+   * partition, and the threads and the compression memory of the format are shared by all of them.
+   */
+  public synchronized RecordWriter<K, V> getRecordWriter(FileSystem ignored,
+                                                         JobConf job,
+                                                         String name,
+                                                         Progressable progress)
       throws IOException {
     boolean ignoreSeparatorOnNull = job.getBoolean("mapred.textoutputformat.ignore.separator", false);
     String keyValueSeparator = job.get("mapred.textoutputformat.separator", "\t");
+    if (openWriters == 0) {
+      configure(job, progress);
+    }
+    openWriters++;
+    try {
+      return new MultiSplitRecordWriter<K, V>(name, keyValueSeparator, ignoreSeparatorOnNull);
+    } catch (IOException e) {
+      releaseWriter();
+      throw e;
+    }
+  }
+
+  private void configure(JobConf job, Progressable progress) {
     splitSize = job.getLong(MR_REDUCE_MAX_FILE_PER_FILE, SPLIT_SIZE);
+    rolloverRecords = job.getLong(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_ROLLOVER_RECORDS,
+        XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_ROLLOVER_RECORDS);
+    rolloverInterval = job.getLong(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_ROLLOVER_INTERVAL,
+        XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_ROLLOVER_INTERVAL);
     jobConf = job;
-    fileName = name;
     jobProgress = progress;
-    Class<? extends CompressionCodec> codecClass =
-        getOutputCompressorClass(job, GzipCodec.class);
-    // create the named codec
-    codec = ReflectionUtils.newInstance(codecClass, job);
-    FSDataOutputStream fileOut = createFile();
-
-    return new MultiSplitRecordWriter<K, V>(new NewDataOutputStream(codec.createOutputStream(fileOut)),
-        keyValueSeparator, ignoreSeparatorOnNull);
+    codec = null;
+    if (getCompressOutput(job)) {
+      Class<? extends CompressionCodec> codecClass =
+          getOutputCompressorClass(job, GzipCodec.class);
+      // create the named codec
+      codec = ReflectionUtils.newInstance(codecClass, job);
+    }
+    int compressThreads = job.getInt(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_COMPRESS_THREADS,
+        XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_COMPRESS_THREADS);
+    if (codec != null && compressThreads > 1) {
+      int compressBlockSize = Math.max(64 * 1024, job.getInt(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_COMPRESS_BLOCK_SIZE,
+          XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_COMPRESS_BLOCK_SIZE));
+      long compressMemory = job.getLong(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_COMPRESS_MEMORY,
+          XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_COMPRESS_MEMORY);
+      compressionBlocks = new CompressionBlockPool(compressBlockSize,
+          (int) Math.max(2L, Math.min(Integer.MAX_VALUE, compressMemory / compressBlockSize)));
+      compressors = Executors.newFixedThreadPool(compressThreads,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Output-Compressor #%d").build());
+    }
+    writeBufferSize = job.getInt(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_WRITE_BUFFER_SIZE,
+        XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_WRITE_BUFFER_SIZE);
+    if (compressors != null || writeBufferSize > 0) {
+      outputWriter = Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Output-Writer").build());
+    }
+    if (writeBufferSize > 0) {
+      fileOpener = Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Output-File-Opener").build());
+    }
+  }
 
+  /**
+   * Shuts the threads of the format down once its last writer is closed.
+   */
+  private synchronized void releaseWriter() {
+    if (--openWriters > 0) {
+      return;
+    }
+    if (fileOpener != null) {
+      fileOpener.shutdownNow();
+      fileOpener = null;
+    }
+    if (outputWriter != null) {
+      outputWriter.shutdownNow();
+      outputWriter = null;
+    }
+    if (compressors != null) {
+      compressors.shutdownNow();
+      compressors = null;
+    }
+    compressionBlocks = null;
   }
 
 }
-
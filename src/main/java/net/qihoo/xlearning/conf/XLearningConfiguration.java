@@ -1,11 +1,15 @@
 package net.qihoo.xlearning.conf;
 
+import net.qihoo.xlearning.api.XLearningOutputCommitter;
+import net.qihoo.xlearning.common.RenameOutputCommitter;
 import net.qihoo.xlearning.common.TextMultiOutputFormat;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.http.HttpConfig;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.mapred.InputFormat;
 import org.apache.hadoop.mapred.OutputFormat;
+import org.apache.hadoop.mapred.Partitioner;
+import org.apache.hadoop.mapred.lib.HashPartitioner;
 
 public class XLearningConfiguration extends YarnConfiguration {
 
@@ -119,6 +123,54 @@ public class XLearningConfiguration extends YarnConfiguration {
 
   public static final Class<? extends OutputFormat> DEFAULT_XLEARNING_OUTPUTF0RMAT_CLASS = TextMultiOutputFormat.class;
 
+  public static final String XLEARNING_OUTPUT_STREAM_COMPRESS = "xlearning.output.stream.compress";
+
+  public static final Boolean DEFAULT_XLEARNING_OUTPUT_STREAM_COMPRESS = true;
+
+  public static final String XLEARNING_OUTPUT_STREAM_ROLLOVER_RECORDS = "xlearning.output.stream.rollover.records";
+
+  public static final long DEFAULT_XLEARNING_OUTPUT_STREAM_ROLLOVER_RECORDS = 0L;
+
+  public static final String XLEARNING_OUTPUT_STREAM_ROLLOVER_INTERVAL = "xlearning.output.stream.rollover.interval";
+
+  public static final long DEFAULT_XLEARNING_OUTPUT_STREAM_ROLLOVER_INTERVAL = 0L;
+
+  public static final String XLEARNING_OUTPUT_STREAM_WRITE_BUFFER_SIZE = "xlearning.output.stream.write.buffer.size";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_STREAM_WRITE_BUFFER_SIZE = 0;
+
+  public static final String XLEARNING_OUTPUT_STREAM_PARTITIONS = "xlearning.output.stream.partitions";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_STREAM_PARTITIONS = 0;
+
+  public static final String XLEARNING_OUTPUT_STREAM_PARTITIONER_CLASS = "xlearning.output.stream.partitioner.class";
+
+  public static final Class<? extends Partitioner> DEFAULT_XLEARNING_OUTPUT_STREAM_PARTITIONER_CLASS = HashPartitioner.class;
+
+  public static final String XLEARNING_OUTPUT_STREAM_COMPRESS_THREADS = "xlearning.output.stream.compress.threads";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_STREAM_COMPRESS_THREADS = 1;
+
+  public static final String XLEARNING_OUTPUT_STREAM_COMPRESS_BLOCK_SIZE = "xlearning.output.stream.compress.block.size";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_STREAM_COMPRESS_BLOCK_SIZE = 4 * 1024 * 1024;
+
+  public static final String XLEARNING_OUTPUT_STREAM_COMPRESS_MEMORY = "xlearning.output.stream.compress.memory";
+
+  public static final long DEFAULT_XLEARNING_OUTPUT_STREAM_COMPRESS_MEMORY = 64 * 1024 * 1024L;
+
+  public static final String XLEARNING_OUTPUT_COMMITTER_CLASS = "xlearning.output.committer.class";
+
+  public static final Class<? extends XLearningOutputCommitter> DEFAULT_XLEARNING_OUTPUT_COMMITTER_CLASS = RenameOutputCommitter.class;
+
+  public static final String XLEARNING_OUTPUT_COMMIT_THREADS = "xlearning.output.commit.threads";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_COMMIT_THREADS = 10;
+
+  public static final String XLEARNING_OUTPUT_CONTAINER_COMMIT = "xlearning.output.container.commit";
+
+  public static final Boolean DEFAULT_XLEARNING_OUTPUT_CONTAINER_COMMIT = false;
+
   public static final String XLEARNING_INPUTFILE_RENAME = "xlearning.inputfile.rename";
 
   public static final Boolean DEFAULT_XLEARNING_INPUTFILE_RENAME = false;
@@ -127,6 +179,24 @@ public class XLearningConfiguration extends YarnConfiguration {
 
   public static final String DEFAULT_XLEARNING_INPUT_STRATEGY = "DOWNLOAD";
 
+  public static final String XLEARNING_INPUT_ALLOCATE_STRATEGY = "xlearning.input.allocate.strategy";
+
+  public static final String DEFAULT_XLEARNING_INPUT_ALLOCATE_STRATEGY = "ROUNDROBIN";
+
+  public static final String XLEARNING_INPUT_LIST_THREAD_NUMS = "xlearning.input.list.thread.nums";
+
+  public static final int DEFAULT_XLEARNING_INPUT_LIST_THREAD_NUMS = 10;
+
+  public static final String XLEARNING_INPUT_LIST_PARTITION_FILTER = "xlearning.input.list.partition.filter";
+
+  public static final String XLEARNING_INPUT_MANIFEST_ENABLE = "xlearning.input.manifest.enable";
+
+  public static final Boolean DEFAULT_XLEARNING_INPUT_MANIFEST_ENABLE = false;
+
+  public static final String XLEARNING_INPUT_MANIFEST_VERIFY_FILES = "xlearning.input.manifest.verify.files";
+
+  public static final Boolean DEFAULT_XLEARNING_INPUT_MANIFEST_VERIFY_FILES = false;
+
   public static final String XLEARNING_OUTPUT_STRATEGY = "xlearning.output.strategy";
 
   public static final String DEFAULT_XLEARNING_OUTPUT_STRATEGY = "UPLOAD";
@@ -139,6 +209,68 @@ public class XLearningConfiguration extends YarnConfiguration {
 
   public static final Boolean DEFAULT_XLEARNING_INPUT_STREAM_SHUFFLE = false;
 
+  public static final String XLEARNING_INPUT_STREAM_BUFFER_SIZE = "xlearning.input.stream.buffer.size";
+
+  public static final int DEFAULT_XLEARNING_INPUT_STREAM_BUFFER_SIZE = 1024 * 1024;
+
+  public static final String XLEARNING_STREAM_RECORD_FRAMING = "xlearning.stream.record.framing";
+
+  public static final String DEFAULT_XLEARNING_STREAM_RECORD_FRAMING = "LINE";
+
+  public static final String XLEARNING_INPUT_STREAM_TRANSPORT = "xlearning.input.stream.transport";
+
+  public static final String DEFAULT_XLEARNING_INPUT_STREAM_TRANSPORT = "PIPE";
+
+  public static final String XLEARNING_INPUT_STREAM_WEIGHTS = "xlearning.input.stream.weights";
+
+  public static final String XLEARNING_INPUT_STREAM_RING_BUFFER_SIZE = "xlearning.input.stream.ring.buffer.size";
+
+  public static final int DEFAULT_XLEARNING_INPUT_STREAM_RING_BUFFER_SIZE = 64 * 1024 * 1024;
+
+  public static final String XLEARNING_INPUT_STREAM_RING_BUFFER_FILE = "xlearning.input.stream.ring.buffer.file";
+
+  public static final String DEFAULT_XLEARNING_INPUT_STREAM_RING_BUFFER_FILE = "streamRingBuffer";
+
+  public static final String XLEARNING_INPUT_STREAM_READER_THREAD_NUMS = "xlearning.input.stream.reader.thread.nums";
+
+  public static final int DEFAULT_XLEARNING_INPUT_STREAM_READER_THREAD_NUMS = 4;
+
+  public static final String XLEARNING_INPUT_STREAM_READER_QUEUE_SIZE = "xlearning.input.stream.reader.queue.size";
+
+  public static final int DEFAULT_XLEARNING_INPUT_STREAM_READER_QUEUE_SIZE = 64;
+
+  public static final String XLEARNING_INPUT_STREAM_RECORD_SHUFFLE = "xlearning.input.stream.record.shuffle";
+
+  public static final Boolean DEFAULT_XLEARNING_INPUT_STREAM_RECORD_SHUFFLE = false;
+
+  public static final String XLEARNING_INPUT_STREAM_RECORD_SHUFFLE_SEED = "xlearning.input.stream.record.shuffle.seed";
+
+  public static final long DEFAULT_XLEARNING_INPUT_STREAM_RECORD_SHUFFLE_SEED = 0L;
+
+  public static final String XLEARNING_INPUT_STREAM_RECORD_SHUFFLE_BUFFER_SIZE = "xlearning.input.stream.record.shuffle.buffer.size";
+
+  public static final int DEFAULT_XLEARNING_INPUT_STREAM_RECORD_SHUFFLE_BUFFER_SIZE = 64 * 1024 * 1024;
+
+  public static final String XLEARNING_INPUT_STREAM_SPLIT_DYNAMIC = "xlearning.input.stream.split.dynamic";
+
+  public static final Boolean DEFAULT_XLEARNING_INPUT_STREAM_SPLIT_DYNAMIC = false;
+
+  public static final String XLEARNING_INPUT_STREAM_SPLIT_LEASE_TIMEOUT = "xlearning.input.stream.split.lease.timeout";
+
+  public static final long DEFAULT_XLEARNING_INPUT_STREAM_SPLIT_LEASE_TIMEOUT = 30 * 60 * 1000L;
+
+  public static final String XLEARNING_INPUT_STREAM_SPLIT_SIZE = "xlearning.input.stream.split.size";
+
+  public static final long DEFAULT_XLEARNING_INPUT_STREAM_SPLIT_SIZE = 0L;
+
+  public static final String XLEARNING_INPUT_STREAM_SPLITS_PER_WORKER = "xlearning.input.stream.splits.per.worker";
+
+  public static final int DEFAULT_XLEARNING_INPUT_STREAM_SPLITS_PER_WORKER = 0;
+
+  public static final String XLEARNING_INPUT_STREAM_SPLIT_COMBINE = "xlearning.input.stream.split.combine";
+
+  public static final Boolean DEFAULT_XLEARNING_INPUT_STREAM_SPLIT_COMBINE = false;
+
   public static final String XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT= "xlearning.inputformat.cachesize.limit";
 
   public static final int DEFAULT_XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT = 100 * 1024;
@@ -151,6 +283,10 @@ public class XLearningConfiguration extends YarnConfiguration {
 
   public static final String DEFAULT_XLEARNING_INPUTFORMAT_CACHEFILE_NAME = "inputformatCache.gz";
 
+  public static final String XLEARNING_INPUTFORMAT_CACHE_FORMAT = "xlearning.inputformat.cache.format";
+
+  public static final String DEFAULT_XLEARNING_INPUTFORMAT_CACHE_FORMAT = "GZIP";
+
   public static final String XLEARNING_INTERREAULST_DIR = "xlearning.interresult.dir";
 
   public static final String DEFAULT_XLEARNING_INTERRESULT_DIR = "/interResult_";
@@ -243,6 +379,46 @@ public class XLearningConfiguration extends YarnConfiguration {
 
   public static final int DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_NUMS = 10;
 
+  public static final String XLEARNING_DOWNLOAD_FILE_THREAD_AUTOTUNE = "xlearning.download.file.thread.autotune";
+
+  public static final Boolean DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_AUTOTUNE = false;
+
+  public static final String XLEARNING_DOWNLOAD_FILE_THREAD_MAX = "xlearning.download.file.thread.max";
+
+  public static final int DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_MAX = 32;
+
+  public static final String XLEARNING_DOWNLOAD_FILE_RANGE_SIZE = "xlearning.download.file.range.size";
+
+  public static final long DEFAULT_XLEARNING_DOWNLOAD_FILE_RANGE_SIZE = 256 * 1024 * 1024L;
+
+  public static final String XLEARNING_DOWNLOAD_FILE_CHECKSUM_VERIFY = "xlearning.download.file.checksum.verify";
+
+  public static final Boolean DEFAULT_XLEARNING_DOWNLOAD_FILE_CHECKSUM_VERIFY = false;
+
+  public static final String XLEARNING_DOWNLOAD_FILE_DECOMPRESS = "xlearning.download.file.decompress";
+
+  public static final Boolean DEFAULT_XLEARNING_DOWNLOAD_FILE_DECOMPRESS = false;
+
+  public static final String XLEARNING_DOWNLOAD_FILE_BUFFER_SIZE = "xlearning.download.file.buffer.size";
+
+  public static final int DEFAULT_XLEARNING_DOWNLOAD_FILE_BUFFER_SIZE = 1024 * 1024;
+
+  public static final String XLEARNING_DOWNLOAD_FILE_DIRECT_BUFFER = "xlearning.download.file.direct.buffer";
+
+  public static final Boolean DEFAULT_XLEARNING_DOWNLOAD_FILE_DIRECT_BUFFER = true;
+
+  public static final String XLEARNING_DOWNLOAD_CACHE_ENABLE = "xlearning.download.cache.enable";
+
+  public static final Boolean DEFAULT_XLEARNING_DOWNLOAD_CACHE_ENABLE = false;
+
+  public static final String XLEARNING_DOWNLOAD_CACHE_DIR = "xlearning.download.cache.dir";
+
+  public static final String DEFAULT_XLEARNING_DOWNLOAD_CACHE_DIR = "/tmp/xlearning/inputcache";
+
+  public static final String XLEARNING_DOWNLOAD_CACHE_SIZE_LIMIT = "xlearning.download.cache.size.limit";
+
+  public static final long DEFAULT_XLEARNING_DOWNLOAD_CACHE_SIZE_LIMIT = 50 * 1024 * 1024 * 1024L;
+
   public static final String XLEARNING_CONTAINER_HEARTBEAT_INTERVAL = "xlearning.container.heartbeat.interval";
 
   public static final int DEFAULT_XLEARNING_CONTAINER_HEARTBEAT_INTERVAL = 10 * 1000;
@@ -39,6 +39,11 @@ public class ContainerReporter extends Thread {
 
   private ConcurrentHashMap<String, List> cpuMetrics;
 
+  private StreamInputMetrics streamInputMetrics;
+
+  private long lastStreamTime;
+
+  private long[] lastStreamCounts;
 
   public ContainerReporter(ApplicationContainerProtocol protocol, Configuration conf,
                            XLearningContainerId xlearningContainerId, String xlearningCmdProcessId) {
@@ -52,6 +57,10 @@ public class ContainerReporter extends Thread {
     this.cpuMetrics = new ConcurrentHashMap<>();
   }
 
+  void setStreamInputMetrics(StreamInputMetrics streamInputMetrics) {
+    this.streamInputMetrics = streamInputMetrics;
+  }
+
   public void run() {
     try {
       produceCpuMetrics(this.xlearningCmdProcessId);
@@ -61,6 +70,9 @@ public class ContainerReporter extends Thread {
 
     while (true) {
       Utilities.sleep(3000);
+      if (streamInputMetrics != null) {
+        produceStreamMetrics();
+      }
       try {
         protocol.reportCpuMetrics(containerId, new Gson().toJson(cpuMetrics));
       } catch (Exception e) {
@@ -130,6 +142,46 @@ public class ContainerReporter extends Thread {
 
   }
 
+  /**
+   * Puts the rates of the stream input counters since the last report into the metrics.
+   */
+  private void produceStreamMetrics() {
+    long now = System.nanoTime();
+    long[] counts = new long[]{
+        streamInputMetrics.records.get(),
+        streamInputMetrics.bytes.get(),
+        streamInputMetrics.writeBlockedNanos.get(),
+        streamInputMetrics.readBlockedNanos.get(),
+        streamInputMetrics.splitOpenNanos.get(),
+        streamInputMetrics.splitOpens.get()};
+    if (lastStreamCounts != null && now > lastStreamTime) {
+      double elapsed = now - lastStreamTime;
+      Long time = (new Date()).getTime();
+      DecimalFormat df = new DecimalFormat("#.00");
+      df.setRoundingMode(RoundingMode.HALF_UP);
+      putPoint("STREAMRECORDS", time, (long) ((counts[0] - lastStreamCounts[0]) * 1e9 / elapsed));
+      putPoint("STREAMBYTES", time, Double.parseDouble(df.format((counts[1] - lastStreamCounts[1]) * 1e9 / elapsed / 1024.0 / 1024.0)));
+      putPoint("STREAMWRITEBLOCKED", time, Math.min(100, (int) ((counts[2] - lastStreamCounts[2]) * 100 / elapsed)));
+      putPoint("STREAMREADBLOCKED", time, Math.min(100, (int) ((counts[3] - lastStreamCounts[3]) * 100 / elapsed / streamInputMetrics.getReaderThreadNum())));
+      long opens = counts[5] - lastStreamCounts[5];
+      if (opens > 0) {
+        putPoint("STREAMSPLITOPEN", time, (counts[4] - lastStreamCounts[4]) / opens / 1000000L);
+      } else {
+        // no split opened since the last report, keep the last latency from being reported again
+        cpuMetrics.remove("STREAMSPLITOPEN");
+      }
+    }
+    lastStreamTime = now;
+    lastStreamCounts = counts;
+  }
+
+  private void putPoint(String key, Long time, Object value) {
+    List point = new ArrayList();
+    point.add(time);
+    point.add(value);
+    cpuMetrics.put(key, point);
+  }
+
   private void produceCpuMetrics(String xlearningCmdProcessId) throws IOException {
     String command = "cat /proc/" + xlearningCmdProcessId + "/stat";
     try {
@@ -80,6 +80,10 @@ public class Heartbeat extends Thread {
     this.heartbeatRequest.setContainersFinishTime(finishTime);
   }
 
+  public void setDownloadStatistics(String downloadStatistics) {
+    this.heartbeatRequest.setDownloadStatistics(downloadStatistics);
+  }
+
   public Boolean isXLearningTrainCompleted() {
     return this.IsXLearningTrainCompleted;
   }
@@ -0,0 +1,245 @@
+package net.qihoo.xlearning.container;
+
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Node-local cache of the input files downloaded under the DOWNLOAD strategy, shared by the containers
+ * of all the applications running on the same node. Files are addressed by the digest of their path,
+ * length, modification time and checksum, linked into the container working dir on a hit, and evicted in
+ * least recently used order once the cache exceeds its size limit. The entries used within the grace period
+ * are never evicted, so an entry is not deleted between its lookup and its link by a running container.
+ * The checksum of a path is fetched once per length and modification time and kept next to the entries,
+ * so a hit costs no DataNode round trip. The entries are read only, as the hardlinks in the containers
+ * share their data and their modification time, which is the last use of the entry.
+ */
+class InputFileCache {
+
+  private static final Log LOG = LogFactory.getLog(InputFileCache.class);
+
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private static final String LOCK_FILE = ".lock";
+
+  private static final String CHECKSUM_SUFFIX = ".checksum";
+
+  private static final long STALE_TMP_FILE_AGE = 24 * 60 * 60 * 1000L;
+
+  private static final long EVICT_GRACE_PERIOD = 10 * 60 * 1000L;
+
+  private final Configuration conf;
+
+  private final File cacheDir;
+
+  private final long sizeLimit;
+
+  private final String owner;
+
+  InputFileCache(Configuration conf, String owner) throws IOException {
+    this.conf = conf;
+    this.cacheDir = new File(conf.get(XLearningConfiguration.XLEARNING_DOWNLOAD_CACHE_DIR,
+        XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_CACHE_DIR));
+    this.sizeLimit = conf.getLong(XLearningConfiguration.XLEARNING_DOWNLOAD_CACHE_SIZE_LIMIT,
+        XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_CACHE_SIZE_LIMIT);
+    this.owner = owner;
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+      throw new IOException("Can not create the input cache dir " + cacheDir);
+    }
+  }
+
+  /**
+   * Returns the cache key of the file, or null if the file can not be cached because its
+   * length or modification time is unknown.
+   */
+  String getCacheKey(Path path, long length, long modificationTime) throws IOException {
+    if (length < 0 || modificationTime < 0) {
+      return null;
+    }
+    FileSystem fs = path.getFileSystem(conf);
+    String fileKey = DigestUtils.md5Hex(fs.makeQualified(path).toString() + "|" + length + "|" + modificationTime);
+    return DigestUtils.md5Hex(fileKey + "|" + getChecksum(fs, path, fileKey));
+  }
+
+  /**
+   * Returns the checksum of the file, read from the checksum file of the cache if a container of the node
+   * fetched it before for the same length and modification time.
+   */
+  private String getChecksum(FileSystem fs, Path path, String fileKey) throws IOException {
+    File checksumFile = new File(cacheDir, fileKey + CHECKSUM_SUFFIX);
+    if (checksumFile.isFile()) {
+      try {
+        String checksumString = new String(Files.readAllBytes(checksumFile.toPath()), StandardCharsets.UTF_8);
+        checksumFile.setLastModified(System.currentTimeMillis());
+        return checksumString;
+      } catch (IOException e) {
+        LOG.debug("Read the cached checksum " + checksumFile + " failed, fetch it again.", e);
+      }
+    }
+    FileChecksum checksum = fs.getFileChecksum(path);
+    String checksumString = checksum == null ? "" :
+        checksum.getAlgorithmName() + ":" + StringUtils.byteToHexString(checksum.getBytes());
+    File tmp = new File(cacheDir, fileKey + CHECKSUM_SUFFIX + "." + owner + TMP_SUFFIX);
+    try {
+      Files.write(tmp.toPath(), checksumString.getBytes(StandardCharsets.UTF_8));
+      if (!tmp.renameTo(checksumFile)) {
+        tmp.delete();
+      }
+    } catch (IOException e) {
+      LOG.debug("Cache the checksum of " + path + " failed.", e);
+      tmp.delete();
+    }
+    return checksumString;
+  }
+
+  /**
+   * Returns the cached file of the key and marks it as recently used, or null on a miss.
+   */
+  File lookup(String key) {
+    File cached = new File(cacheDir, key);
+    if (!cached.isFile()) {
+      return null;
+    }
+    cached.setLastModified(System.currentTimeMillis());
+    return cached;
+  }
+
+  /**
+   * The private file the current container downloads the key into before publishing it.
+   */
+  File getTempFile(String key) {
+    return new File(cacheDir, key + "." + owner + TMP_SUFFIX);
+  }
+
+  /**
+   * Moves the downloaded temp file of the key into the cache as a read only file, so a process writing
+   * its linked input in place fails instead of changing the entry for the later containers. If another
+   * container published the same key in the meantime, its copy is kept and ours is dropped.
+   */
+  File publish(String key) throws IOException {
+    File tmp = getTempFile(key);
+    File cached = new File(cacheDir, key);
+    if (cached.isFile()) {
+      tmp.delete();
+    } else {
+      tmp.setReadOnly();
+      if (!tmp.renameTo(cached) && !cached.isFile()) {
+        throw new IOException("Can not move " + tmp + " into the input cache");
+      }
+    }
+    cached.setLastModified(System.currentTimeMillis());
+    return cached;
+  }
+
+  /**
+   * Hardlinks the cached file to the destination, falling back to a copy when the cache dir is on another
+   * file system. Either way the destination keeps the data even if the entry is evicted later, which a
+   * symlink would leave dangling while the user process reads it.
+   */
+  void link(File cached, String dst) throws IOException {
+    File target = new File(dst);
+    if (target.exists()) {
+      target.delete();
+    }
+    try {
+      Files.createLink(target.toPath(), cached.toPath());
+    } catch (IOException | UnsupportedOperationException e) {
+      LOG.debug("Hardlink " + cached + " to " + dst + " failed, copy it instead.", e);
+      Files.copy(cached.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Evicts the least recently used files until the cache fits in its size limit, and cleans up the temp
+   * files left by the containers which died while downloading. Only one container of the node evicts at
+   * a time, the others skip it.
+   */
+  void evict() {
+    RandomAccessFile lockFile = null;
+    FileLock lock = null;
+    try {
+      lockFile = new RandomAccessFile(new File(cacheDir, LOCK_FILE), "rw");
+      lock = lockFile.getChannel().tryLock();
+      if (lock == null) {
+        return;
+      }
+      File[] files = cacheDir.listFiles();
+      if (files == null) {
+        return;
+      }
+      long now = System.currentTimeMillis();
+      long totalSize = 0L;
+      List<File> entries = new ArrayList<>();
+      for (File file : files) {
+        if (!file.isFile() || file.getName().equals(LOCK_FILE)) {
+          continue;
+        }
+        if (file.getName().endsWith(TMP_SUFFIX)) {
+          if (now - file.lastModified() > STALE_TMP_FILE_AGE) {
+            LOG.info("Delete stale input cache temp file " + file);
+            file.delete();
+          }
+          continue;
+        }
+        if (file.getName().endsWith(CHECKSUM_SUFFIX)) {
+          // the checksums are tiny, they are only dropped once unused for long
+          if (now - file.lastModified() > STALE_TMP_FILE_AGE) {
+            file.delete();
+          }
+          continue;
+        }
+        entries.add(file);
+        totalSize += file.length();
+      }
+      if (totalSize <= sizeLimit) {
+        return;
+      }
+      Collections.sort(entries, new Comparator<File>() {
+        @Override
+        public int compare(File f1, File f2) {
+          return Long.compare(f1.lastModified(), f2.lastModified());
+        }
+      });
+      for (File entry : entries) {
+        if (totalSize <= sizeLimit || now - entry.lastModified() < EVICT_GRACE_PERIOD) {
+          // the rest are used more recently, by the running containers among others
+          break;
+        }
+        long length = entry.length();
+        if (entry.delete()) {
+          totalSize -= length;
+          LOG.info("Evict input cache file " + entry + " with size " + length);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Evict the input cache " + cacheDir + " failed.", e);
+    } finally {
+      if (lock != null) {
+        try {
+          lock.release();
+        } catch (IOException e) {
+        }
+      }
+      IOUtils.closeStream(lockFile);
+    }
+  }
+}
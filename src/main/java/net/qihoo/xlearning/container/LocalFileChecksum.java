@@ -0,0 +1,120 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.MD5MD5CRC32CastagnoliFileChecksum;
+import org.apache.hadoop.fs.MD5MD5CRC32FileChecksum;
+import org.apache.hadoop.fs.MD5MD5CRC32GzipFileChecksum;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.util.DataChecksum;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Verifies a downloaded file end to end by computing the HDFS file checksum (MD5 of the per block MD5 of the
+ * chunk CRCs) over the local copy with the parameters of the remote checksum, and comparing both.
+ */
+final class LocalFileChecksum {
+
+  private static final Log LOG = LogFactory.getLog(LocalFileChecksum.class);
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private LocalFileChecksum() {
+  }
+
+  /**
+   * Returns false if the local file differs from the remote one. Files whose file system does not provide
+   * a MD5MD5CRC32 checksum are only compared by length.
+   */
+  static boolean verify(Configuration conf, Path remote, File local) throws IOException {
+    FileSystem fs = remote.getFileSystem(conf);
+    FileStatus remoteStatus = fs.getFileStatus(remote);
+    long length = remoteStatus.getLen();
+    if (local.length() != length) {
+      LOG.warn("Length of " + local + " is " + local.length() + " while " + remote + " is " + length);
+      return false;
+    }
+    FileChecksum remoteChecksum = fs.getFileChecksum(remote);
+    if (length == 0 || !(remoteChecksum instanceof MD5MD5CRC32FileChecksum)) {
+      LOG.debug("Skip the checksum verification of " + remote + " with checksum " + remoteChecksum);
+      return true;
+    }
+    MD5MD5CRC32FileChecksum expected = (MD5MD5CRC32FileChecksum) remoteChecksum;
+    DataChecksum.Type crcType = expected.getCrcType();
+    int bytesPerCrc = expected.getChecksumOpt().getBytesPerChecksum();
+    long blockSize = remoteStatus.getBlockSize();
+    if (blockSize % bytesPerCrc != 0) {
+      LOG.debug("Skip the checksum verification of " + remote + " since its block size is not aligned to the chunks");
+      return true;
+    }
+    MD5Hash md5 = compute(local, blockSize, crcType, bytesPerCrc);
+    long crcPerBlock = length > blockSize ? blockSize / bytesPerCrc : 0L;
+    MD5MD5CRC32FileChecksum actual = crcType == DataChecksum.Type.CRC32C
+        ? new MD5MD5CRC32CastagnoliFileChecksum(bytesPerCrc, crcPerBlock, md5)
+        : new MD5MD5CRC32GzipFileChecksum(bytesPerCrc, crcPerBlock, md5);
+    if (!expected.equals(actual)) {
+      LOG.warn("Checksum of " + local + " is " + actual + " while " + remote + " is " + expected);
+      return false;
+    }
+    return true;
+  }
+
+  private static MD5Hash compute(File file, long blockSize, DataChecksum.Type crcType, int bytesPerCrc)
+      throws IOException {
+    DataChecksum checksum = DataChecksum.newDataChecksum(crcType, bytesPerCrc);
+    int chunks = Math.max(1, BUFFER_SIZE / bytesPerCrc);
+    ByteBuffer data = ByteBuffer.allocate(chunks * bytesPerCrc);
+    ByteBuffer sums = ByteBuffer.allocate(chunks * checksum.getChecksumSize());
+    MessageDigest blockDigest = MD5Hash.getDigester();
+    DataOutputBuffer blockMd5s = new DataOutputBuffer();
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      long remainingInBlock = blockSize;
+      boolean eof = false;
+      while (!eof) {
+        data.clear();
+        data.limit((int) Math.min(data.capacity(), remainingInBlock));
+        while (data.hasRemaining()) {
+          if (channel.read(data) < 0) {
+            eof = true;
+            break;
+          }
+        }
+        data.flip();
+        int read = data.remaining();
+        if (read == 0) {
+          break;
+        }
+        sums.clear();
+        sums.limit(((read + bytesPerCrc - 1) / bytesPerCrc) * checksum.getChecksumSize());
+        checksum.calculateChunkedSums(data, sums);
+        blockDigest.update(sums.array(), 0, sums.limit());
+        remainingInBlock -= read;
+        if (remainingInBlock == 0) {
+          blockMd5s.write(blockDigest.digest());
+          remainingInBlock = blockSize;
+        }
+      }
+      if (remainingInBlock != blockSize) {
+        blockMd5s.write(blockDigest.digest());
+      }
+    } finally {
+      IOUtils.closeStream(in);
+    }
+    return MD5Hash.digest(blockMd5s.getData(), 0, blockMd5s.getLength());
+  }
+}
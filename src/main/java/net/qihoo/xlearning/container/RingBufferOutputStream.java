@@ -0,0 +1,174 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds the STREAM input to the user process through a ring buffer in a memory mapped file instead of its
+ * stdin pipe. The file starts with a header of HEADER_SIZE bytes, all the fields little endian:
+ * <pre>
+ *   0  int  magic "XLRB"
+ *   4  int  version
+ *   8  long capacity of the data region
+ *   16 long write position, the total bytes written so far, only advanced by this stream
+ *   24 long read position, the total bytes consumed so far, only advanced by the reader
+ *   32 int  closed flag, set once all the bytes are written
+ * </pre>
+ * followed by the data region, where the byte at position p is at HEADER_SIZE + p % capacity. The writer
+ * publishes the bytes by advancing the write position after copying them, and waits while the region is
+ * full; the reader consumes the bytes between the positions and advances the read position.
+ */
+class RingBufferOutputStream extends OutputStream {
+
+  private static final Log LOG = LogFactory.getLog(RingBufferOutputStream.class);
+
+  static final int HEADER_SIZE = 64;
+
+  private static final int MAGIC = 0x42524c58;
+
+  private static final int VERSION = 1;
+
+  private static final int CAPACITY_OFFSET = 8;
+
+  private static final int WRITE_POSITION_OFFSET = 16;
+
+  private static final int READ_POSITION_OFFSET = 24;
+
+  private static final int CLOSED_OFFSET = 32;
+
+  private static final long WAIT_NANOS = 100 * 1000L;
+
+  private static final int WAITS_PER_PROCESS_CHECK = 1000;
+
+  private final File file;
+
+  private Process process;
+
+  private final MappedByteBuffer buffer;
+
+  private final int capacity;
+
+  private long writePosition;
+
+  private long readPosition;
+
+  private volatile int fence;
+
+  private boolean closed;
+
+  RingBufferOutputStream(File file, int capacity) throws IOException {
+    this.file = file;
+    this.capacity = capacity;
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(HEADER_SIZE + (long) capacity);
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity);
+    } finally {
+      raf.close();
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putLong(CAPACITY_OFFSET, capacity);
+    buffer.putLong(WRITE_POSITION_OFFSET, 0L);
+    buffer.putLong(READ_POSITION_OFFSET, 0L);
+    buffer.putInt(CLOSED_OFFSET, 0);
+    buffer.putInt(4, VERSION);
+    publish();
+    buffer.putInt(0, MAGIC);
+    LOG.info("Created the stream input ring buffer " + file + " with capacity " + capacity);
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * The process reading the buffer, the writer fails instead of waiting forever once it exits.
+   */
+  void setReader(Process process) {
+    this.process = process;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Ring buffer " + file + " is closed");
+    }
+    int waits = 0;
+    while (len > 0) {
+      long free = capacity - (writePosition - readPosition);
+      if (free == 0) {
+        readPosition = buffer.getLong(READ_POSITION_OFFSET);
+        free = capacity - (writePosition - readPosition);
+        if (free == 0) {
+          LockSupport.parkNanos(WAIT_NANOS);
+          if (Thread.interrupted()) {
+            throw new InterruptedIOException("Interrupted while waiting for the reader of " + file);
+          }
+          if (++waits % WAITS_PER_PROCESS_CHECK == 0 && !isProcessAlive()) {
+            throw new IOException("The reader of " + file + " exited before consuming all the input");
+          }
+          continue;
+        }
+      }
+      int index = (int) (writePosition % capacity);
+      int n = (int) Math.min(Math.min(free, len), capacity - index);
+      buffer.position(HEADER_SIZE + index);
+      buffer.put(b, off, n);
+      off += n;
+      len -= n;
+      writePosition += n;
+      publish();
+      buffer.putLong(WRITE_POSITION_OFFSET, writePosition);
+    }
+  }
+
+  /**
+   * Marks the stream as finished, the reader drains the remaining bytes and sees the end of the input.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    publish();
+    buffer.putInt(CLOSED_OFFSET, 1);
+  }
+
+  private boolean isProcessAlive() {
+    if (process == null) {
+      return true;
+    }
+    try {
+      process.exitValue();
+      return false;
+    } catch (IllegalThreadStateException e) {
+      return true;
+    }
+  }
+
+  /**
+   * Keeps the stores to the mapped data from being reordered after the following store of a header field:
+   * no store moves after the volatile write, and none moves before the volatile read that follows it. The
+   * hardware keeps the order of the stores on x86.
+   */
+  private int publish() {
+    fence = 0;
+    return fence;
+  }
+}
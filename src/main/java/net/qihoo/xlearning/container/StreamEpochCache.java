@@ -0,0 +1,199 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Local cache of the records fed to the user process during the first epoch of the STREAM strategy, so
+ * the later epochs replay it instead of reading the splits from hdfs again. The records are cached in
+ * the batches written to the stdin of the process, and the cache size is the number of bytes written to
+ * the file so far.
+ */
+abstract class StreamEpochCache {
+
+  private static final Log LOG = LogFactory.getLog(StreamEpochCache.class);
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  protected final File file;
+
+  protected final CountingOutputStream fileOut;
+
+  private StreamEpochCache(File file) throws IOException {
+    this.file = file;
+    this.fileOut = new CountingOutputStream(new FileOutputStream(file));
+  }
+
+  /**
+   * Creates the cache of the format:
+   * GZIP - the records gzipped, left to the user process to read and never replayed;
+   * RAW - length prefixed batches of the records;
+   * LZ4 - length prefixed batches compressed by lz4, or by the fastest deflate without the native lz4.
+   */
+  static StreamEpochCache create(Configuration conf, File file, String format) throws IOException {
+    switch (format.toUpperCase()) {
+      case "GZIP":
+        return new GzipCache(file);
+      case "RAW":
+        return new BatchCache(file, null);
+      case "LZ4":
+        return new BatchCache(file, conf);
+      default:
+        throw new IllegalArgumentException("Unknown inputformat cache format " + format);
+    }
+  }
+
+  abstract void write(byte[] b, int off, int len) throws IOException;
+
+  /**
+   * Finishes writing the cache.
+   */
+  abstract void close() throws IOException;
+
+  long size() {
+    return fileOut.getByteCount();
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  void delete() {
+    try {
+      close();
+    } catch (IOException e) {
+      LOG.debug("Close inputformat cache file " + file + " failed.", e);
+    }
+    file.delete();
+  }
+
+  /**
+   * A cache the later epochs are fed from. The user process reads the other caches itself.
+   */
+  abstract static class ReplayableCache extends StreamEpochCache {
+
+    private ReplayableCache(File file) throws IOException {
+      super(file);
+    }
+
+    /**
+     * Writes all the cached records to the stream.
+     */
+    abstract void replay(OutputStream dst) throws IOException;
+  }
+
+  private static final class GzipCache extends StreamEpochCache {
+
+    private final GZIPOutputStream out;
+
+    GzipCache(File file) throws IOException {
+      super(file);
+      this.out = new GZIPOutputStream(fileOut, BUFFER_SIZE);
+    }
+
+    @Override
+    void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    void close() throws IOException {
+      out.close();
+    }
+
+  }
+
+  private static final class BatchCache extends ReplayableCache {
+
+    private final Lz4Codec lz4Codec;
+
+    private final boolean compressed;
+
+    private final DataOutputStream out;
+
+    /**
+     * @param conf the configuration of the lz4 codec, null for the uncompressed cache
+     */
+    BatchCache(File file, Configuration conf) throws IOException {
+      super(file);
+      this.compressed = conf != null;
+      if (compressed && Lz4Codec.isNativeCodeLoaded()) {
+        this.lz4Codec = ReflectionUtils.newInstance(Lz4Codec.class, conf);
+      } else {
+        if (compressed) {
+          LOG.info("Native lz4 is not loaded, compress the inputformat cache with the fastest deflate instead.");
+        }
+        this.lz4Codec = null;
+      }
+      OutputStream stream = new BufferedOutputStream(fileOut, BUFFER_SIZE);
+      if (lz4Codec != null) {
+        stream = lz4Codec.createOutputStream(stream);
+      } else if (compressed) {
+        stream = new DeflaterOutputStream(stream, new Deflater(Deflater.BEST_SPEED), BUFFER_SIZE);
+      }
+      this.out = new DataOutputStream(stream);
+    }
+
+    @Override
+    void write(byte[] b, int off, int len) throws IOException {
+      out.writeInt(len);
+      out.write(b, off, len);
+    }
+
+    @Override
+    void close() throws IOException {
+      out.close();
+    }
+
+    @Override
+    void replay(OutputStream dst) throws IOException {
+      InputStream stream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+      DataInputStream in = null;
+      try {
+        if (lz4Codec != null) {
+          stream = lz4Codec.createInputStream(stream);
+        } else if (compressed) {
+          stream = new InflaterInputStream(stream);
+        }
+        in = new DataInputStream(stream);
+        byte[] batch = new byte[BUFFER_SIZE];
+        while (true) {
+          int len;
+          try {
+            len = in.readInt();
+          } catch (EOFException e) {
+            break;
+          }
+          if (len > batch.length) {
+            batch = new byte[len];
+          }
+          in.readFully(batch, 0, len);
+          dst.write(batch, 0, len);
+        }
+      } finally {
+        IOUtils.closeStream(in == null ? stream : in);
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package net.qihoo.xlearning.container;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the STREAM input of a container, updated by the readers and the writer of the stdin redirect
+ * and sampled by the {@link ContainerReporter}. The readers add their counts once per batch, not per record.
+ * Only the calls taking at least {@link #BLOCKED_THRESHOLD_NANOS} count as blocked, the shorter ones are the
+ * copy into a pipe with room left or the decode of a buffered record, which grow with the throughput alone.
+ */
+class StreamInputMetrics {
+
+  static final long BLOCKED_THRESHOLD_NANOS = 1000000L;
+
+  final AtomicLong records = new AtomicLong();
+
+  final AtomicLong bytes = new AtomicLong();
+
+  /**
+   * Time spent in the writes to the process blocked while its pipe or ring buffer is full.
+   */
+  final AtomicLong writeBlockedNanos = new AtomicLong();
+
+  /**
+   * Time spent by all the readers in the calls of RecordReader.next blocked on reading the input.
+   */
+  final AtomicLong readBlockedNanos = new AtomicLong();
+
+  final AtomicLong splitOpenNanos = new AtomicLong();
+
+  final AtomicLong splitOpens = new AtomicLong();
+
+  private volatile int readerThreadNum = 1;
+
+  int getReaderThreadNum() {
+    return readerThreadNum;
+  }
+
+  void setReaderThreadNum(int readerThreadNum) {
+    this.readerThreadNum = Math.max(1, readerThreadNum);
+  }
+
+  /**
+   * Returns the elapsed time if it is long enough to count as blocked, otherwise 0.
+   */
+  static long blocked(long nanos) {
+    return nanos >= BLOCKED_THRESHOLD_NANOS ? nanos : 0L;
+  }
+
+  /**
+   * Wraps the stream to the process, counting the bytes written to it and the time blocked in the writes.
+   */
+  OutputStream meter(OutputStream out) {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        out.write(b, off, len);
+        writeBlockedNanos.addAndGet(blocked(System.nanoTime() - start));
+        bytes.addAndGet(len);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        long start = System.nanoTime();
+        out.flush();
+        writeBlockedNanos.addAndGet(blocked(System.nanoTime() - start));
+      }
+    };
+  }
+}
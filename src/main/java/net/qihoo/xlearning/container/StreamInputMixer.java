@@ -0,0 +1,89 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Interleaves the record batches of the readers of several STREAM inputs into one stream. Every batch is
+ * taken from a reader drawn at random by the weights of the inputs, among the readers not yet finished,
+ * so each input makes up about its share of the bytes until it runs out.
+ */
+class StreamInputMixer {
+
+  private final List<StreamInputReader> readers;
+
+  private final double[] weights;
+
+  private final boolean[] finished;
+
+  private final Random random;
+
+  private int remaining;
+
+  StreamInputMixer(List<StreamInputReader> readers, double[] weights, Random random) {
+    this.readers = readers;
+    this.weights = weights;
+    this.finished = new boolean[readers.size()];
+    this.random = random;
+    this.remaining = readers.size();
+  }
+
+  void start() {
+    for (StreamInputReader reader : readers) {
+      reader.start();
+    }
+  }
+
+  /**
+   * Returns the next batch of records of any of the inputs, or null once all of them are read.
+   */
+  DataOutputBuffer next() throws IOException, InterruptedException {
+    while (remaining > 0) {
+      int index = pick();
+      DataOutputBuffer batch = readers.get(index).next();
+      if (batch != null) {
+        return batch;
+      }
+      finished[index] = true;
+      remaining--;
+    }
+    return null;
+  }
+
+  void close() {
+    for (StreamInputReader reader : readers) {
+      reader.close();
+    }
+  }
+
+  private int pick() {
+    double total = 0.0;
+    int last = -1;
+    for (int i = 0; i < weights.length; i++) {
+      if (!finished[i]) {
+        total += weights[i];
+        last = i;
+      }
+    }
+    if (remaining == 1 || total <= 0.0) {
+      for (int i = 0; i < finished.length; i++) {
+        if (!finished[i]) {
+          return i;
+        }
+      }
+    }
+    double target = random.nextDouble() * total;
+    for (int i = 0; i < weights.length; i++) {
+      if (!finished[i]) {
+        target -= weights[i];
+        if (target < 0.0) {
+          return i;
+        }
+      }
+    }
+    return last;
+  }
+}
@@ -0,0 +1,378 @@
+package net.qihoo.xlearning.container;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.BinaryComparable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.lib.CombineFileSplit;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the input splits of the STREAM strategy with a pool of reader threads, each opening and decoding its
+ * own split ahead of the consumer. The records are encoded one per line, or length prefixed under the binary
+ * framing, into batches, which are handed to the single consumer through bounded queues so the readers block
+ * once they are far enough ahead. In order mode each split has its own queue and the batches are returned
+ * split by split in the order of the splits, otherwise all the readers share one queue, take the splits from
+ * a {@link SplitSource} and the records of the splits are interleaved.
+ */
+class StreamInputReader {
+
+  private static final Log LOG = LogFactory.getLog(StreamInputReader.class);
+
+  private static final int BATCH_SIZE = 64 * 1024;
+
+  private static final DataOutputBuffer END_OF_SPLIT = new DataOutputBuffer(0);
+
+  private static final DataOutputBuffer END_OF_READER = new DataOutputBuffer(0);
+
+  private final JobConf jobConf;
+
+  private final InputFormat inputFormat;
+
+  private final List<InputSplit> splits;
+
+  private final SplitSource source;
+
+  private final List<BlockingQueue<DataOutputBuffer>> queues;
+
+  private final boolean ordered;
+
+  private final boolean binary;
+
+  private final int threadNum;
+
+  private final AtomicInteger nextSplit;
+
+  private volatile Throwable error;
+
+  private StreamInputMetrics metrics = new StreamInputMetrics();
+
+  private ExecutorService executor;
+
+  private int finishedSplits;
+
+  private int finishedReaders;
+
+  /**
+   * The splits to read in the unordered mode.
+   */
+  interface SplitSource {
+
+    /**
+     * Returns the next split to read, or null once there is none left.
+     */
+    InputSplit next() throws IOException, InterruptedException;
+
+    /**
+     * Called on the consumer thread once it has taken and written out all the batches of the split, that
+     * is on the first call of next after the last batch of the split was returned.
+     */
+    void finished(InputSplit split) throws IOException;
+  }
+
+  /**
+   * @param threadNum number of the splits read at the same time
+   * @param queueSize number of the batches buffered ahead of the consumer, shared by all the splits
+   * @param ordered   whether to return the records split by split instead of interleaving them
+   * @param binary    whether to write the records length prefixed instead of one per line
+   */
+  StreamInputReader(JobConf jobConf, InputFormat inputFormat, final List<InputSplit> splits, int threadNum,
+                    int queueSize, boolean ordered, boolean binary) {
+    this.jobConf = jobConf;
+    this.binary = binary;
+    this.inputFormat = inputFormat;
+    this.splits = splits;
+    this.threadNum = Math.max(1, Math.min(threadNum, splits.size()));
+    this.ordered = ordered;
+    this.nextSplit = new AtomicInteger(0);
+    this.source = new SplitSource() {
+      @Override
+      public InputSplit next() {
+        int index = nextSplit.getAndIncrement();
+        return index < splits.size() ? splits.get(index) : null;
+      }
+
+      @Override
+      public void finished(InputSplit split) {
+      }
+    };
+    this.queues = new ArrayList<>();
+    if (ordered) {
+      int capacity = Math.max(1, queueSize / this.threadNum);
+      for (int i = 0; i < splits.size(); i++) {
+        queues.add(new LinkedBlockingQueue<DataOutputBuffer>(capacity));
+      }
+    } else {
+      queues.add(new LinkedBlockingQueue<DataOutputBuffer>(Math.max(1, queueSize)));
+    }
+  }
+
+  /**
+   * Reads the splits of the source in the unordered mode, for sources whose splits are not known upfront.
+   */
+  StreamInputReader(JobConf jobConf, InputFormat inputFormat, SplitSource source, int threadNum, int queueSize,
+                    boolean binary) {
+    this.jobConf = jobConf;
+    this.binary = binary;
+    this.inputFormat = inputFormat;
+    this.splits = null;
+    this.source = source;
+    this.threadNum = Math.max(1, threadNum);
+    this.ordered = false;
+    this.nextSplit = new AtomicInteger(0);
+    this.queues = new ArrayList<>();
+    queues.add(new LinkedBlockingQueue<DataOutputBuffer>(Math.max(1, queueSize)));
+  }
+
+  /**
+   * Writes the record followed by a newline. Text and other BinaryComparable values are written from their
+   * backing bytes, skipping the decode and encode of a String for every record.
+   */
+  static void writeRecord(OutputStream out, Object value) throws IOException {
+    if (value instanceof BinaryComparable) {
+      BinaryComparable bytes = (BinaryComparable) value;
+      out.write(bytes.getBytes(), 0, bytes.getLength());
+    } else {
+      out.write(value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    out.write('\n');
+  }
+
+  /**
+   * Writes the record as its length in four bytes big endian followed by its bytes: the backing bytes of
+   * BytesWritable, Text and other BinaryComparable values, the serialized form of other Writables.
+   */
+  static void writeFramedRecord(DataOutputBuffer out, Object value) throws IOException {
+    int start = out.getLength();
+    out.writeInt(0);
+    if (value instanceof BinaryComparable) {
+      BinaryComparable bytes = (BinaryComparable) value;
+      out.write(bytes.getBytes(), 0, bytes.getLength());
+    } else if (value instanceof Writable) {
+      ((Writable) value).write(out);
+    } else {
+      out.write(value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    int length = out.getLength() - start - 4;
+    byte[] data = out.getData();
+    data[start] = (byte) (length >>> 24);
+    data[start + 1] = (byte) (length >>> 16);
+    data[start + 2] = (byte) (length >>> 8);
+    data[start + 3] = (byte) length;
+  }
+
+  void setMetrics(StreamInputMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  void start() {
+    if (splits != null && splits.isEmpty()) {
+      return;
+    }
+    executor = Executors.newFixedThreadPool(threadNum, new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("Stream-Input-Reader #%d")
+        .build());
+    for (int i = 0; i < threadNum; i++) {
+      executor.execute(new ReadTask());
+    }
+    executor.shutdown();
+  }
+
+  /**
+   * Returns the next batch of records, or null once all the splits are read. Rethrows the failure of
+   * any reader.
+   */
+  DataOutputBuffer next() throws IOException, InterruptedException {
+    if (executor == null) {
+      return null;
+    }
+    while (ordered ? finishedSplits < splits.size() : finishedReaders < threadNum) {
+      DataOutputBuffer batch = queues.get(ordered ? finishedSplits : 0).take();
+      if (error != null) {
+        throw new IOException("Read the stream input splits failed", error);
+      }
+      if (batch == END_OF_SPLIT) {
+        finishedSplits++;
+        continue;
+      }
+      if (batch == END_OF_READER) {
+        finishedReaders++;
+        continue;
+      }
+      if (batch instanceof SplitEnd) {
+        source.finished(((SplitEnd) batch).split);
+        continue;
+      }
+      return batch;
+    }
+    return null;
+  }
+
+  /**
+   * Stops the readers, which may still be blocked on a full queue if the consumer gave up early.
+   */
+  void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  private class ReadTask implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        if (ordered) {
+          readInOrder();
+        } else {
+          readFromSource();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void readInOrder() throws InterruptedException {
+      int index;
+      while ((index = nextSplit.getAndIncrement()) < splits.size()) {
+        BlockingQueue<DataOutputBuffer> queue = queues.get(index);
+        try {
+          readSplit(splits.get(index), queue);
+        } catch (InterruptedException e) {
+          throw e;
+        } catch (Exception e) {
+          LOG.error("Read split " + splits.get(index) + " failed", e);
+          error = e;
+        }
+        queue.put(END_OF_SPLIT);
+        if (error != null) {
+          return;
+        }
+      }
+    }
+
+    private void readFromSource() throws InterruptedException {
+      BlockingQueue<DataOutputBuffer> queue = queues.get(0);
+      try {
+        InputSplit split;
+        while (error == null && (split = source.next()) != null) {
+          readSplit(split, queue);
+          // the split is finished by the consumer, which would otherwise lose the queued batches on a failure
+          queue.put(new SplitEnd(split));
+        }
+      } catch (InterruptedException e) {
+        throw e;
+      } catch (Exception e) {
+        LOG.error("Read the stream input splits failed", e);
+        error = e;
+      }
+      queue.put(END_OF_READER);
+    }
+
+    private void readSplit(InputSplit split, BlockingQueue<DataOutputBuffer> queue) throws IOException, InterruptedException {
+      LOG.info("split " + split + " is handling...");
+      DataOutputBuffer batch = new DataOutputBuffer(BATCH_SIZE);
+      if (split instanceof CombineFileSplit) {
+        // the files packed into one split by the AM, read one after another into the same batches
+        CombineFileSplit combined = (CombineFileSplit) split;
+        for (int i = 0; i < combined.getNumPaths(); i++) {
+          batch = readRecords(new FileSplit(combined.getPath(i), combined.getOffset(i), combined.getLength(i), (String[]) null),
+              queue, batch);
+        }
+      } else {
+        batch = readRecords(split, queue, batch);
+      }
+      if (batch.getLength() > 0) {
+        queue.put(batch);
+      }
+      LOG.info("split " + split + " is finished.");
+    }
+
+    /**
+     * Reads the records of the split into the batch, puts the full batches to the queue and returns the
+     * last one, which is not full yet.
+     */
+    @SuppressWarnings("unchecked")
+    private DataOutputBuffer readRecords(InputSplit split, BlockingQueue<DataOutputBuffer> queue, DataOutputBuffer batch)
+        throws IOException, InterruptedException {
+      long openStart = System.nanoTime();
+      RecordReader reader = inputFormat.getRecordReader(split, jobConf, Reporter.NULL);
+      metrics.splitOpenNanos.addAndGet(System.nanoTime() - openStart);
+      metrics.splitOpens.incrementAndGet();
+      try {
+        Object key = reader.createKey();
+        Object value = reader.createValue();
+        long records = 0;
+        long readNanos = 0;
+        while (true) {
+          long readStart = System.nanoTime();
+          try {
+            if (!reader.next(key, value)) {
+              break;
+            }
+          } catch (EOFException e) {
+            LOG.warn("Unexpected end of split " + split, e);
+            break;
+          } finally {
+            readNanos += StreamInputMetrics.blocked(System.nanoTime() - readStart);
+          }
+          records++;
+          if (binary) {
+            writeFramedRecord(batch, value);
+          } else {
+            writeRecord(batch, value);
+          }
+          if (batch.getLength() >= BATCH_SIZE) {
+            addCounts(records, readNanos);
+            records = 0;
+            readNanos = 0;
+            queue.put(batch);
+            batch = new DataOutputBuffer(BATCH_SIZE);
+          }
+        }
+        addCounts(records, readNanos);
+      } finally {
+        reader.close();
+      }
+      return batch;
+    }
+
+    private void addCounts(long records, long readNanos) {
+      metrics.records.addAndGet(records);
+      metrics.readBlockedNanos.addAndGet(readNanos);
+    }
+  }
+
+  /**
+   * Follows the batches of a split read from the source in the shared queue.
+   */
+  private static final class SplitEnd extends DataOutputBuffer {
+
+    private final InputSplit split;
+
+    SplitEnd(InputSplit split) {
+      super(0);
+      this.split = split;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputFormat;
+import org.apache.hadoop.mapred.Partitioner;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+
+/**
+ * Routes the lines of the STREAM output to a fixed number of partition writers by their keys, the text
+ * before the first key value separator, so the downstream jobs can read the data partitioned by key without
+ * shuffling it again. Partition k is written with the name part-r-0000k by every container, like the k-th
+ * reducer of a MapReduce job, so the files of a partition are found by the same pattern in all the outputs.
+ * The lines are written as they are, the key and the value are only used to choose the partition. The
+ * number of records and of uncompressed bytes of every partition are written to the _partitions file next to
+ * the partition files once they are closed, one tab separated line per partition.
+ */
+class StreamOutputPartitioner implements RecordWriter<Object, Text> {
+
+  private static final Log LOG = LogFactory.getLog(StreamOutputPartitioner.class);
+
+  private static final String SUMMARY_FILE = "_partitions";
+
+  private static final NumberFormat PARTITION_FORMAT = NumberFormat.getInstance();
+
+  static {
+    PARTITION_FORMAT.setGroupingUsed(false);
+    PARTITION_FORMAT.setMinimumIntegerDigits(5);
+  }
+
+  private final RecordWriter<Object, Text>[] writers;
+
+  private final Partitioner<Text, Text> partitioner;
+
+  private final byte[] separator;
+
+  private final Text key = new Text();
+
+  private final Text value = new Text();
+
+  private final long[] records;
+
+  private final long[] bytes;
+
+  private final FileSystem fs;
+
+  private final JobConf jobConf;
+
+  @SuppressWarnings("unchecked")
+  StreamOutputPartitioner(FileSystem fs, JobConf jobConf, Class<? extends OutputFormat> outputFormatClass,
+                          Class<? extends Partitioner> partitionerClass, int partitions) throws IOException {
+    this.fs = fs;
+    this.jobConf = jobConf;
+    this.partitioner = ReflectionUtils.newInstance(partitionerClass, jobConf);
+    this.separator = jobConf.get("mapred.textoutputformat.separator", "\t").getBytes(StandardCharsets.UTF_8);
+    this.writers = new RecordWriter[partitions];
+    this.records = new long[partitions];
+    this.bytes = new long[partitions];
+    // one format writes all the partitions, so the TextMultiOutputFormat shares its compression threads and
+    // memory among them instead of taking them once per partition
+    OutputFormat outputFormat = ReflectionUtils.newInstance(outputFormatClass, jobConf);
+    for (int i = 0; i < partitions; i++) {
+      writers[i] = outputFormat.getRecordWriter(fs, jobConf, "part-r-" + PARTITION_FORMAT.format(i), Reporter.NULL);
+    }
+    LOG.info("Partitioning the stream output into " + partitions + " partitions with " + partitionerClass.getName());
+  }
+
+  @Override
+  public void write(Object ignored, Text line) throws IOException {
+    int pos = find(line.getBytes(), line.getLength());
+    if (pos < 0) {
+      key.set(line.getBytes(), 0, line.getLength());
+      value.clear();
+    } else {
+      key.set(line.getBytes(), 0, pos);
+      value.set(line.getBytes(), pos + separator.length, line.getLength() - pos - separator.length);
+    }
+    int partition = partitioner.getPartition(key, value, writers.length);
+    if (partition < 0 || partition >= writers.length) {
+      throw new IOException("Illegal partition " + partition + " for key " + key + " of " + writers.length + " partitions");
+    }
+    writers[partition].write(null, line);
+    records[partition]++;
+    bytes[partition] += line.getLength() + 1;
+  }
+
+  @Override
+  public void close(Reporter reporter) throws IOException {
+    IOException error = null;
+    for (int i = 0; i < writers.length; i++) {
+      try {
+        writers[i].close(reporter);
+      } catch (IOException e) {
+        LOG.error("Close the writer of partition " + i + " failed", e);
+        error = e;
+      }
+      LOG.info("Stream output partition " + i + ": " + records[i] + " records, " + bytes[i] + " bytes");
+    }
+    if (error != null) {
+      throw error;
+    }
+    writeSummary();
+  }
+
+  private void writeSummary() throws IOException {
+    Path summaryPath = FileOutputFormat.getTaskOutputPath(jobConf, SUMMARY_FILE);
+    Writer writer = new OutputStreamWriter(fs.create(summaryPath, true), StandardCharsets.UTF_8);
+    try {
+      writer.write("partition\trecords\tbytes\n");
+      for (int i = 0; i < writers.length; i++) {
+        writer.write(PARTITION_FORMAT.format(i) + "\t" + records[i] + "\t" + bytes[i] + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private int find(byte[] data, int length) {
+    if (separator.length == 0) {
+      return -1;
+    }
+    int last = length - separator.length;
+    for (int i = 0; i <= last; i++) {
+      int j = 0;
+      while (j < separator.length && data[i + j] == separator[j]) {
+        j++;
+      }
+      if (j == separator.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,168 @@
+package net.qihoo.xlearning.container;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Shuffles the lines written to the STREAM stdin of the user process within a bounded buffer. The lines
+ * are collected into one byte array, and once it is full the complete lines in it are written out in a
+ * random order, the partial line at its end is kept for the next round. A single line larger than the
+ * buffer is passed through as is. Under the binary framing the length prefixed records take the place of
+ * the lines.
+ */
+class StreamShuffleBuffer extends OutputStream {
+
+  private final OutputStream out;
+
+  private final boolean binary;
+
+  private final byte[] buffer;
+
+  private int length;
+
+  private int lineStart;
+
+  private int[] lineOffsets;
+
+  private int[] order;
+
+  private int lines;
+
+  private boolean passthrough;
+
+  private int passthroughRemaining;
+
+  private Random random;
+
+  StreamShuffleBuffer(OutputStream out, int capacity, boolean binary) {
+    this.out = out;
+    this.binary = binary;
+    this.buffer = new byte[Math.max(binary ? 4 : 1, capacity)];
+    this.lineOffsets = new int[1024];
+    this.order = new int[1024];
+    this.random = new Random();
+  }
+
+  void setRandom(Random random) {
+    this.random = random;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    int end = off + len;
+    while (off < end) {
+      if (passthrough && binary) {
+        int n = Math.min(end - off, passthroughRemaining);
+        out.write(b, off, n);
+        off += n;
+        passthroughRemaining -= n;
+        passthrough = passthroughRemaining > 0;
+        continue;
+      }
+      if (passthrough) {
+        int stop = off;
+        while (stop < end && b[stop] != '\n') {
+          stop++;
+        }
+        if (stop < end) {
+          stop++;
+          passthrough = false;
+        }
+        out.write(b, off, stop - off);
+        off = stop;
+        continue;
+      }
+      if (length == buffer.length) {
+        if (lineStart == 0) {
+          out.write(buffer, 0, length);
+          if (binary) {
+            passthroughRemaining = 4 + readLength(0) - length;
+          }
+          length = 0;
+          passthrough = true;
+        } else {
+          writeLines();
+        }
+        continue;
+      }
+      int n = Math.min(end - off, buffer.length - length);
+      System.arraycopy(b, off, buffer, length, n);
+      if (binary) {
+        length += n;
+        while (lineStart + 4 <= length && lineStart + 4 + readLength(lineStart) <= length) {
+          addLine();
+          lineStart += 4 + readLength(lineStart);
+        }
+      } else {
+        for (int i = length, stop = length + n; i < stop; i++) {
+          if (buffer[i] == '\n') {
+            addLine();
+            lineStart = i + 1;
+          }
+        }
+        length += n;
+      }
+      off += n;
+    }
+  }
+
+  /**
+   * Writes out all the buffered lines, including a last line without the newline.
+   */
+  void finish() throws IOException {
+    writeLines();
+    if (length > 0) {
+      out.write(buffer, 0, length);
+      length = 0;
+    }
+    passthrough = false;
+    passthroughRemaining = 0;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private int readLength(int offset) {
+    return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+        | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+  }
+
+  private void addLine() {
+    if (lines == lineOffsets.length) {
+      lineOffsets = Arrays.copyOf(lineOffsets, lines * 2);
+      order = new int[lines * 2];
+    }
+    lineOffsets[lines++] = lineStart;
+  }
+
+  private void writeLines() throws IOException {
+    for (int i = 0; i < lines; i++) {
+      order[i] = i;
+    }
+    for (int i = lines - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int tmp = order[i];
+      order[i] = order[j];
+      order[j] = tmp;
+    }
+    for (int i = 0; i < lines; i++) {
+      int line = order[i];
+      int start = lineOffsets[line];
+      int stop = line + 1 < lines ? lineOffsets[line + 1] : lineStart;
+      out.write(buffer, start, stop - start);
+    }
+    System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+    length -= lineStart;
+    lineStart = 0;
+    lines = 0;
+  }
+}
@@ -5,7 +5,10 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import net.qihoo.xlearning.api.ApplicationContainerProtocol;
 import net.qihoo.xlearning.api.XLearningConstants;
+import net.qihoo.xlearning.api.XLearningOutputCommitter;
+import net.qihoo.xlearning.common.AliasInputSplit;
 import net.qihoo.xlearning.common.InputInfo;
+import net.qihoo.xlearning.common.InputSplitLease;
 import net.qihoo.xlearning.common.OutputInfo;
 import net.qihoo.xlearning.common.XLearningContainerStatus;
 import net.qihoo.xlearning.common.TextMultiOutputFormat;
@@ -15,32 +18,53 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.hadoop.yarn.util.ConverterUtils;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.mapred.*;
+import org.apache.hadoop.util.DirectBufferPool;
+import org.apache.hadoop.util.LineReader;
 import org.apache.hadoop.util.ReflectionUtils;
 
 import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.text.SimpleDateFormat;
-import java.util.zip.GZIPOutputStream;
 
 public class XLearningContainer {
 
   private static final Log LOG = LogFactory.getLog(XLearningContainer.class);
 
+  private static final long DOWNLOAD_TUNE_INTERVAL = 3000L;
+
+  private static final double DOWNLOAD_TUNE_DECREASE_THRESHOLD = 0.1;
+
+  private static final DirectBufferPool DOWNLOAD_BUFFER_POOL = new DirectBufferPool();
+
   private XLearningConfiguration conf;
 
   private ApplicationContainerProtocol amClient;
@@ -59,6 +83,20 @@ public class XLearningContainer {
 
   private final int downloadRetry;
 
+  private final int downloadBufferSize;
+
+  private final boolean downloadDirectBuffer;
+
+  private final ConcurrentHashMap<String, AtomicInteger> downloadRetries = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, AtomicInteger> downloadResumes = new ConcurrentHashMap<>();
+
+  private final AtomicLong downloadedBytes = new AtomicLong(0L);
+
+  private volatile int downloadConcurrency;
+
+  private volatile long downloadThroughput;
+
   private final Socket reservedSocket;
 
   private int lightGBMLocalPort;
@@ -73,6 +111,14 @@ public class XLearningContainer {
 
   private ContainerReporter containerReporter;
 
+  private final StreamInputMetrics streamInputMetrics = new StreamInputMetrics();
+
+  private Thread streamOutputThread;
+
+  private volatile String streamOutputTaskId;
+
+  private volatile boolean streamOutputSucceeded;
+
   private int heartbeatInterval;
 
   private String xlearningCmdProcessId;
@@ -84,6 +130,8 @@ public class XLearningContainer {
     this.containerId = new XLearningContainerId(ConverterUtils.toContainerId(System
         .getenv(ApplicationConstants.Environment.CONTAINER_ID.name())));
     this.downloadRetry = conf.getInt(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_RETRY, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_RETRY);
+    this.downloadBufferSize = conf.getInt(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_BUFFER_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_BUFFER_SIZE);
+    this.downloadDirectBuffer = conf.getBoolean(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_DIRECT_BUFFER, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_DIRECT_BUFFER);
     this.envs = System.getenv();
     this.xlearningAppType = envs.get(XLearningConstants.Environment.XLEARNING_APP_TYPE.toString()).toUpperCase();
     this.role = envs.get(XLearningConstants.Environment.XLEARNING_TF_ROLE.toString());
@@ -173,31 +221,89 @@ public class XLearningContainer {
 
     private final String downloadDst;
 
+    private final long offset;
+
+    private final long length;
+
+    private final long fileLength;
+
+    private final CompressionCodec codec;
+
+    // bytes of the file, or of the range, already written to the destination
+    private long written;
+
     DownLoadTask(Path downloadSrc, String downloadDst) throws IOException {
+      this(downloadSrc, downloadDst, -1L, null);
+    }
+
+    /**
+     * Download the whole file, decompressing it with the codec on the fly if the codec is not null.
+     */
+    DownLoadTask(Path downloadSrc, String downloadDst, long fileLength, CompressionCodec codec) throws IOException {
       this.downloadSrc = downloadSrc;
       this.downloadDst = downloadDst;
+      this.offset = 0L;
+      this.length = -1L;
+      this.fileLength = fileLength;
+      this.codec = codec;
+    }
+
+    /**
+     * Download the byte range [offset, offset + length) of the source file into the same range
+     * of the preallocated destination file. A negative length downloads the whole file.
+     */
+    DownLoadTask(Path downloadSrc, String downloadDst, long offset, long length) throws IOException {
+      this.downloadSrc = downloadSrc;
+      this.downloadDst = downloadDst;
+      this.offset = offset;
+      this.length = length;
+      this.fileLength = -1L;
+      this.codec = null;
+    }
+
+    /**
+     * Bytes this task downloads, -1 if unknown.
+     */
+    long getSize() {
+      return length >= 0 ? length : fileLength;
     }
 
     @Override
     public void run() {
+      if (length >= 0) {
+        downloadRange();
+        return;
+      }
+      if (codec != null) {
+        downloadDecompressed();
+        return;
+      }
       LOG.info("Downloading input file from " + this.downloadSrc + " to " + this.downloadDst);
+      File dst = new File(downloadDst);
+      if (dst.exists()) {
+        dst.delete();
+      }
       int retry = 0;
       while (true) {
-        InputStream in = null;
-        OutputStream out = null;
+        FSDataInputStream in = null;
+        FileOutputStream out = null;
         try {
-          File exist = new File(downloadDst);
-          if (exist.exists()) {
-            exist.delete();
-          }
+          // the bytes already written are kept and the download resumes right after them
+          written = dst.length();
           FileSystem fs = downloadSrc.getFileSystem(conf);
           in = fs.open(downloadSrc);
-          out = new FileOutputStream(downloadDst);
-          IOUtils.copyBytes(in, out, conf, true);
+          if (written > 0) {
+            LOG.info("Resume downloading input file " + this.downloadSrc + " from offset " + written);
+            in.seek(written);
+            countDownload(downloadResumes, downloadSrc);
+          }
+          out = new FileOutputStream(downloadDst, written > 0);
+          copy(in, out.getChannel(), -1L);
           LOG.info("Download input file " + this.downloadSrc + " successful.");
           break;
         } catch (Exception e) {
           if (retry < downloadRetry) {
+            countDownload(downloadRetries, downloadSrc);
             LOG.warn("Download input file " + this.downloadSrc + " failed, retry in " + (++retry), e);
           } else {
             LOG.error("Download input file " + this.downloadSrc + " failed after " + downloadRetry + " retry times!", e);
@@ -219,6 +325,445 @@ public class XLearningContainer {
         }
       }
     }
+
+    private void downloadDecompressed() {
+      LOG.info("Downloading and decompressing input file from " + this.downloadSrc + " to " + this.downloadDst
+          + " with " + codec.getClass().getSimpleName());
+      int retry = 0;
+      while (true) {
+        InputStream in = null;
+        OutputStream out = null;
+        Decompressor decompressor = CodecPool.getDecompressor(codec);
+        try {
+          // the position in a compressed stream can not be resumed, so every retry starts over
+          FileSystem fs = downloadSrc.getFileSystem(conf);
+          in = codec.createInputStream(fs.open(downloadSrc), decompressor);
+          out = new FileOutputStream(downloadDst);
+          byte[] buffer = new byte[downloadBufferSize];
+          int read;
+          while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+            downloadedBytes.addAndGet(read);
+          }
+          LOG.info("Download and decompress input file " + this.downloadSrc + " successful.");
+          break;
+        } catch (Exception e) {
+          if (retry < downloadRetry) {
+            countDownload(downloadRetries, downloadSrc);
+            LOG.warn("Download and decompress input file " + this.downloadSrc + " failed, retry in " + (++retry), e);
+          } else {
+            LOG.error("Download and decompress input file " + this.downloadSrc + " failed after " + downloadRetry + " retry times!", e);
+            reportFailedAndExit();
+          }
+        } finally {
+          IOUtils.closeStream(in);
+          IOUtils.closeStream(out);
+          CodecPool.returnDecompressor(decompressor);
+        }
+      }
+    }
+
+    private void downloadRange() {
+      String range = this.downloadSrc + " [" + offset + ", " + (offset + length) + ")";
+      LOG.info("Downloading input file range " + range + " to " + this.downloadDst);
+      int retry = 0;
+      written = 0L;
+      while (true) {
+        FSDataInputStream in = null;
+        RandomAccessFile out = null;
+        try {
+          FileSystem fs = downloadSrc.getFileSystem(conf);
+          in = fs.open(downloadSrc);
+          if (written > 0) {
+            LOG.info("Resume downloading input file range " + range + " from offset " + (offset + written));
+            countDownload(downloadResumes, downloadSrc);
+          }
+          // one seek per range keeps a single sequential block reader open instead of a pread per buffer
+          in.seek(offset + written);
+          out = new RandomAccessFile(downloadDst, "rw");
+          out.getChannel().position(offset + written);
+          copy(in, out.getChannel(), length);
+          LOG.info("Download input file range " + range + " successful.");
+          break;
+        } catch (Exception e) {
+          if (retry < downloadRetry) {
+            countDownload(downloadRetries, downloadSrc);
+            LOG.warn("Download input file range " + range + " failed, retry in " + (++retry), e);
+          } else {
+            LOG.error("Download input file range " + range + " failed after " + downloadRetry + " retry times!", e);
+            reportFailedAndExit();
+          }
+        } finally {
+          IOUtils.closeStream(in);
+          IOUtils.closeStream(out);
+        }
+      }
+    }
+
+    /**
+     * Copies the stream to the channel until the task has written limit bytes, or until the end of the stream
+     * if limit is negative. Streams reading into ByteBuffers are read into pooled direct buffers, which the
+     * channel writes without another copy on the heap.
+     */
+    private void copy(FSDataInputStream in, FileChannel out, long limit) throws IOException {
+      boolean direct = downloadDirectBuffer && in.getWrappedStream() instanceof ByteBufferReadable;
+      ByteBuffer buffer = direct ? DOWNLOAD_BUFFER_POOL.getBuffer(downloadBufferSize) : ByteBuffer.allocate(downloadBufferSize);
+      try {
+        while (limit < 0 || written < limit) {
+          buffer.clear();
+          if (limit >= 0 && limit - written < buffer.capacity()) {
+            buffer.limit((int) (limit - written));
+          }
+          int read;
+          if (direct) {
+            read = in.read(buffer);
+          } else {
+            read = in.read(buffer.array(), buffer.arrayOffset(), buffer.remaining());
+            if (read > 0) {
+              buffer.position(read);
+            }
+          }
+          if (read < 0) {
+            if (limit >= 0) {
+              throw new EOFException("Unexpected end of file " + this.downloadSrc + " with " + (limit - written) + " bytes remaining");
+            }
+            break;
+          }
+          buffer.flip();
+          while (buffer.hasRemaining()) {
+            out.write(buffer);
+          }
+          written += read;
+          downloadedBytes.addAndGet(read);
+        }
+      } finally {
+        if (direct) {
+          DOWNLOAD_BUFFER_POOL.returnBuffer(buffer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Verifies the checksum of a downloaded file, downloads it once more from scratch on a mismatch and fails
+   * the container if the second copy does not match either.
+   */
+  private class VerifyTask implements Runnable {
+
+    private final Path downloadSrc;
+
+    private final String downloadDst;
+
+    VerifyTask(Path downloadSrc, String downloadDst) {
+      this.downloadSrc = downloadSrc;
+      this.downloadDst = downloadDst;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (LocalFileChecksum.verify(conf, downloadSrc, new File(downloadDst))) {
+          LOG.debug("Checksum of input file " + downloadSrc + " verified.");
+          return;
+        }
+        LOG.warn("Checksum of input file " + downloadSrc + " mismatched, download it again.");
+        countDownload(downloadRetries, downloadSrc);
+        new DownLoadTask(downloadSrc, downloadDst).run();
+        if (LocalFileChecksum.verify(conf, downloadSrc, new File(downloadDst))) {
+          return;
+        }
+        LOG.error("Checksum of input file " + downloadSrc + " mismatched after downloading again!");
+      } catch (IOException e) {
+        LOG.error("Verify the checksum of input file " + downloadSrc + " failed!", e);
+      }
+      reportFailedAndExit();
+    }
+  }
+
+  private void countDownload(ConcurrentHashMap<String, AtomicInteger> counts, Path path) {
+    AtomicInteger count = counts.get(path.toString());
+    if (count == null) {
+      AtomicInteger newCount = new AtomicInteger();
+      count = counts.putIfAbsent(path.toString(), newCount);
+      if (count == null) {
+        count = newCount;
+      }
+    }
+    count.incrementAndGet();
+    reportDownloadStatistics();
+  }
+
+  /**
+   * Reports the per file retry and resume counts, the concurrency and the throughput (bytes per second)
+   * of the downloads to the AM with the next heartbeat.
+   */
+  private synchronized void reportDownloadStatistics() {
+    Map<String, Object> statistics = new HashMap<>();
+    statistics.put("retries", downloadRetries);
+    statistics.put("resumes", downloadResumes);
+    statistics.put("concurrency", downloadConcurrency);
+    statistics.put("throughput", downloadThroughput);
+    heartbeatThread.setDownloadStatistics(new Gson().toJson(statistics));
+  }
+
+  /**
+   * Waits for the downloads while tuning the pool size in an AIMD way: the concurrency grows by one thread
+   * per interval as long as the aggregate throughput does not drop, and is halved when it drops noticeably.
+   */
+  private void awaitDownloadWithAutoTune(ThreadPoolExecutor executor, int ceiling) throws InterruptedException {
+    long lastBytes = downloadedBytes.get();
+    long lastTime = System.currentTimeMillis();
+    long lastThroughput = -1L;
+    while (!executor.awaitTermination(DOWNLOAD_TUNE_INTERVAL, TimeUnit.MILLISECONDS)) {
+      long now = System.currentTimeMillis();
+      long bytes = downloadedBytes.get();
+      long throughput = (bytes - lastBytes) * 1000L / Math.max(1L, now - lastTime);
+      int concurrency = executor.getMaximumPoolSize();
+      int next = concurrency;
+      if (lastThroughput >= 0) {
+        if (throughput < lastThroughput * (1 - DOWNLOAD_TUNE_DECREASE_THRESHOLD)) {
+          next = Math.max(1, concurrency / 2);
+        } else {
+          next = Math.min(ceiling, concurrency + 1);
+        }
+      }
+      if (next > concurrency) {
+        executor.setMaximumPoolSize(next);
+        executor.setCorePoolSize(next);
+      } else if (next < concurrency) {
+        executor.setCorePoolSize(next);
+        executor.setMaximumPoolSize(next);
+      }
+      if (next != concurrency) {
+        LOG.info("Download throughput " + throughput + " bytes/s, adjust download concurrency from " + concurrency + " to " + next);
+      }
+      downloadConcurrency = next;
+      downloadThroughput = throughput;
+      reportDownloadStatistics();
+      // the throughput after a decrease is the new baseline instead of a signal to decrease again
+      lastThroughput = next < concurrency ? -1L : throughput;
+      lastBytes = bytes;
+      lastTime = now;
+    }
+  }
+
+  /**
+   * Leases the stream input splits of an epoch from the AM one at a time under the dynamic split assignment,
+   * and reports every split back once all its records are written to the process, so the AM requeues the
+   * split if the container fails while its records are still queued.
+   */
+  private class StreamSplitLeaser implements StreamInputReader.SplitSource {
+
+    private static final long WAIT_INTERVAL = 1000L;
+
+    private final int epoch;
+
+    private final OutputStream sink;
+
+    private final Map<InputSplit, Integer> splitIds = Collections.synchronizedMap(new IdentityHashMap<InputSplit, Integer>());
+
+    StreamSplitLeaser(int epoch, OutputStream sink) {
+      this.epoch = epoch;
+      this.sink = sink;
+    }
+
+    @Override
+    public InputSplit next() throws InterruptedException {
+      while (true) {
+        InputSplitLease lease = amClient.leaseStreamInputSplit(containerId, epoch);
+        if (lease.getSplitId() >= 0) {
+          splitIds.put(lease.getSplit(), lease.getSplitId());
+          return lease.getSplit();
+        }
+        if (lease.getSplitId() == InputSplitLease.FINISHED) {
+          return null;
+        }
+        // the remaining splits are leased by other containers, wait in case any of them is requeued
+        Thread.sleep(WAIT_INTERVAL);
+      }
+    }
+
+    @Override
+    public void finished(InputSplit split) throws IOException {
+      sink.flush();
+      amClient.finishStreamInputSplit(containerId, epoch, splitIds.remove(split));
+    }
+  }
+
+  /**
+   * Writes the records of the inputs to the stream for all the epochs and closes it, interleaving the
+   * inputs by their weights if there are several. The splits of a single input not tagged by the AM are
+   * keyed by null.
+   *
+   * @param alias the alias of the input if it has a stream of its own, to name its cache file
+   */
+  private void writeStreamInput(OutputStream stdin, Map<String, List<InputSplit>> inputs, String alias) throws Exception {
+    boolean isCache = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHE, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHE);
+    int epochs = conf.getInt(XLearningConfiguration.XLEARNING_STREAM_EPOCH, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_EPOCH);
+    long cacheSizeLimit = conf.getInt(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT);
+    int readerThreadNum = conf.getInt(XLearningConfiguration.XLEARNING_INPUT_STREAM_READER_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_READER_THREAD_NUMS);
+    int readerQueueSize = conf.getInt(XLearningConfiguration.XLEARNING_INPUT_STREAM_READER_QUEUE_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_READER_QUEUE_SIZE);
+    boolean binaryFraming = conf.get(XLearningConfiguration.XLEARNING_STREAM_RECORD_FRAMING, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_RECORD_FRAMING).toUpperCase().equals("BINARY");
+    boolean recordShuffle = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_RECORD_SHUFFLE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_RECORD_SHUFFLE);
+    long shuffleSeed = conf.getLong(XLearningConfiguration.XLEARNING_INPUT_STREAM_RECORD_SHUFFLE_SEED, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_RECORD_SHUFFLE_SEED);
+    // without shuffle the records keep the order of the splits, otherwise the splits are interleaved.
+    // The record shuffle reads the splits in order too, so the seed alone decides the order of the records.
+    boolean ordered = recordShuffle || !conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_SHUFFLE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SHUFFLE);
+    StreamShuffleBuffer shuffleBuffer = null;
+    OutputStream sink = stdin;
+    if (recordShuffle) {
+      shuffleBuffer = new StreamShuffleBuffer(stdin, conf.getInt(XLearningConfiguration.XLEARNING_INPUT_STREAM_RECORD_SHUFFLE_BUFFER_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_RECORD_SHUFFLE_BUFFER_SIZE), binaryFraming);
+      sink = shuffleBuffer;
+    }
+    boolean dynamicSplit = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_SPLIT_DYNAMIC, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SPLIT_DYNAMIC);
+    if (dynamicSplit && (inputs.size() > 1 || !inputs.containsKey(null))) {
+      // the AM assigns the splits of several inputs or of the FIFO transport upfront
+      dynamicSplit = false;
+    }
+    if (dynamicSplit && isCache && epochs > 1) {
+      // the splits leased in the first epoch differ per container, and a container replaying its cache would
+      // never lease the later epochs, leaving them to the containers without a cache
+      LOG.warn("The inputformat cache is disabled under the dynamic split assignment, every epoch leases the splits again.");
+      isCache = false;
+    }
+    StreamEpochCache cache = null;
+    if (isCache && epochs > 1) {
+      cache = StreamEpochCache.create(conf,
+          new File(conf.get(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHEFILE_NAME, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHEFILE_NAME)
+              + (alias == null ? "" : "_" + alias)),
+          conf.get(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHE_FORMAT, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHE_FORMAT));
+    }
+    JobConf jobConf = new JobConf(conf);
+    Class<? extends InputFormat> inputFormatClass = conf.getClass(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_INPUTF0RMAT_CLASS, InputFormat.class);
+    Map<String, InputFormat> inputFormats = new HashMap<>();
+    double[] weights = new double[inputs.size()];
+    Map<String, Double> inputWeights = getStreamInputWeights();
+    int k = 0;
+    for (String inputAlias : inputs.keySet()) {
+      Class<? extends InputFormat> aliasInputFormatClass = inputAlias == null ? inputFormatClass
+          : conf.getClass(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS + "." + inputAlias, inputFormatClass, InputFormat.class);
+      inputFormats.put(inputAlias, ReflectionUtils.newInstance(aliasInputFormatClass, jobConf));
+      weights[k++] = inputWeights.containsKey(inputAlias) ? inputWeights.get(inputAlias) : 1.0;
+    }
+    for (int j = 0; j < epochs; j++) {
+      LOG.info("Epoch " + (j + 1) + " starting...");
+      Random random = new Random((shuffleSeed * 1000003L + index) * 1000003L + j);
+      if (recordShuffle) {
+        shuffleBuffer.setRandom(random);
+      }
+      if (j > 0 && cache != null) {
+        if (!(cache instanceof StreamEpochCache.ReplayableCache)) {
+          // the user process reads the later epochs from the cache file itself
+          break;
+        }
+        ((StreamEpochCache.ReplayableCache) cache).replay(sink);
+        if (shuffleBuffer != null) {
+          shuffleBuffer.finish();
+        }
+        LOG.info("Epoch " + (j + 1) + " finished from the inputformat cache.");
+        continue;
+      }
+      List<StreamInputReader> readers = new ArrayList<>();
+      for (Map.Entry<String, List<InputSplit>> input : inputs.entrySet()) {
+        List<InputSplit> epochInputs = input.getValue();
+        if (recordShuffle) {
+          epochInputs = new ArrayList<>(epochInputs);
+          Collections.shuffle(epochInputs, random);
+        }
+        StreamInputReader reader = dynamicSplit
+            ? new StreamInputReader(jobConf, inputFormats.get(input.getKey()), new StreamSplitLeaser(j, sink), readerThreadNum, readerQueueSize, binaryFraming)
+            : new StreamInputReader(jobConf, inputFormats.get(input.getKey()), epochInputs, readerThreadNum, readerQueueSize, ordered, binaryFraming);
+        reader.setMetrics(streamInputMetrics);
+        readers.add(reader);
+      }
+      StreamInputMixer reader = new StreamInputMixer(readers, weights, random);
+      try {
+        reader.start();
+        DataOutputBuffer batch;
+        while ((batch = reader.next()) != null) {
+          sink.write(batch.getData(), 0, batch.getLength());
+          if (cache != null) {
+            cache.write(batch.getData(), 0, batch.getLength());
+            if ((cache.size() / 1024 / 1024) > cacheSizeLimit) {
+              LOG.info("Inputformat cache file size is:" + cache.size() / 1024 / 1024 + "M "
+                  + "beyond the limit size:" + cacheSizeLimit + "M.");
+              cache.delete();
+              LOG.info("Local cache file deleted and will not use cache.");
+              cache = null;
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      if (shuffleBuffer != null) {
+        shuffleBuffer.finish();
+      }
+      if (cache != null) {
+        cache.close();
+        LOG.info("Inputformat cache file " + cache.getFile() + " written with size " + cache.size());
+      }
+      LOG.info("Epoch " + (j + 1) + " finished.");
+    }
+    stdin.close();
+  }
+
+  /**
+   * Groups the stream input splits of the container by the aliases of their inputs, in the order of the
+   * inputs. The AM tags the splits with the aliases only when there are several inputs or each of them has
+   * its own named pipe, created here before the process starts; otherwise all the splits are keyed by null.
+   */
+  private void buildStreamInputs(Map<String, List<InputSplit>> streamInputs, boolean fifoTransport) throws IOException {
+    List<String> aliases = new ArrayList<>();
+    String xlearningInputs = envs.get(XLearningConstants.Environment.XLEARNING_INPUTS.toString());
+    if (!StringUtils.isBlank(xlearningInputs)) {
+      for (String input : StringUtils.split(xlearningInputs, "|")) {
+        String[] inputPathTuple = StringUtils.split(input, "#");
+        if (inputPathTuple.length > 1) {
+          aliases.add(inputPathTuple[1]);
+        }
+      }
+    }
+    InputSplit[] splits = amClient.getStreamInputSplit(containerId);
+    if (!fifoTransport && aliases.size() <= 1) {
+      streamInputs.put(null, new ArrayList<>(Arrays.asList(splits)));
+      return;
+    }
+    for (String alias : aliases) {
+      streamInputs.put(alias, new ArrayList<InputSplit>());
+    }
+    for (InputSplit split : splits) {
+      AliasInputSplit aliasSplit = (AliasInputSplit) split;
+      streamInputs.get(aliasSplit.getAlias()).add(aliasSplit.getSplit());
+    }
+    if (fifoTransport) {
+      for (String alias : aliases) {
+        Process mkfifo = Runtime.getRuntime().exec(new String[]{"mkfifo", alias});
+        try {
+          if (mkfifo.waitFor() != 0) {
+            throw new IOException("Create the named pipe " + alias + " for the stream input failed");
+          }
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted while creating the named pipe " + alias);
+        }
+        LOG.info("Stream input " + alias + " is written to the named pipe " + new File(alias).getAbsolutePath());
+      }
+    }
+  }
+
+  /**
+   * Parses the weights of the stream inputs, given as alias:weight pairs separated by commas.
+   */
+  private Map<String, Double> getStreamInputWeights() {
+    Map<String, Double> weights = new HashMap<>();
+    for (String weight : conf.getStrings(XLearningConfiguration.XLEARNING_INPUT_STREAM_WEIGHTS, new String[0])) {
+      String[] pair = StringUtils.split(weight.trim(), ":");
+      if (pair.length != 2) {
+        throw new IllegalArgumentException("Error stream input weight format " + weight);
+      }
+      weights.put(pair[0], Double.parseDouble(pair[1]));
+    }
+    return weights;
   }
 
   @SuppressWarnings("deprecation")
@@ -252,19 +797,37 @@ public class XLearningContainer {
         LOG.info("Input path: " + inputInfo.getAliasName() + "@" + inputInfo.getPaths().toString());
       }
 
-      ExecutorService executor = Executors.newFixedThreadPool(
-          conf.getInt(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_NUMS),
+      int downloadThreadNums = conf.getInt(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_NUMS);
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(downloadThreadNums, downloadThreadNums,
+          60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
           new ThreadFactoryBuilder()
               .setDaemon(true)
               .setNameFormat("Download-File-Thread #%d")
               .build()
       );
+      List<DownLoadTask> downloadTasks = new ArrayList<>();
 
+      long rangeSize = conf.getLong(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_RANGE_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_RANGE_SIZE);
+      InputFileCache inputCache = null;
+      if (conf.getBoolean(XLearningConfiguration.XLEARNING_DOWNLOAD_CACHE_ENABLE, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_CACHE_ENABLE)) {
+        inputCache = new InputFileCache(conf, containerId.toString());
+      }
+      // local destination -> cache key of the files downloaded into the cache by this container
+      Map<String, String> cacheMisses = new LinkedHashMap<>();
+      Set<String> pendingCacheKeys = new HashSet<>();
+      // local file -> remote file of the downloads to verify
+      Map<String, Path> downloadedFiles = new LinkedHashMap<>();
+      CompressionCodecFactory codecFactory = null;
+      if (conf.getBoolean(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_DECOMPRESS, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_DECOMPRESS)) {
+        codecFactory = new CompressionCodecFactory(conf);
+      }
       for (InputInfo inputInfo : inputs) {
         String downloadDir = inputInfo.getAliasName();
         Utilities.mkdirs(downloadDir.toString());
         int index = 0;
-        for (Path path : inputInfo.getPaths()) {
+        for (int i = 0; i < inputInfo.getPaths().size(); i++) {
+          Path path = inputInfo.getPaths().get(i);
+          long fileLength = inputInfo.getLength(i);
           String downloadDst;
           if (conf.getBoolean(XLearningConfiguration.XLEARNING_INPUTFILE_RENAME, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFILE_RENAME)) {
             downloadDst = downloadDir + File.separator + System.currentTimeMillis() + "_" + index++;
@@ -272,20 +835,119 @@ public class XLearningContainer {
             String[] fileName = StringUtils.split(path.toString(), '/');
             downloadDst = downloadDir + File.separator + fileName[fileName.length - 1];
           }
-          DownLoadTask downloadTask = new DownLoadTask(path, downloadDst);
-          executor.submit(downloadTask);
+          CompressionCodec codec = codecFactory == null ? null : codecFactory.getCodec(path);
+          if (codec != null && !conf.getBoolean(XLearningConfiguration.XLEARNING_INPUTFILE_RENAME, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFILE_RENAME)) {
+            downloadDst = CompressionCodecFactory.removeSuffix(downloadDst, codec.getDefaultExtension());
+          }
+          String downloadTarget = downloadDst;
+          if (inputCache != null) {
+            String cacheKey = inputCache.getCacheKey(path, fileLength, inputInfo.getModificationTime(i));
+            if (cacheKey != null && codec != null) {
+              // the decompressed copy is cached apart from the compressed one
+              cacheKey += "-decompressed";
+            }
+            if (cacheKey != null) {
+              File cached = inputCache.lookup(cacheKey);
+              if (cached != null) {
+                inputCache.link(cached, downloadDst);
+                LOG.info("Input file " + path + " hit the local cache " + cached);
+                continue;
+              }
+              cacheMisses.put(downloadDst, cacheKey);
+              if (!pendingCacheKeys.add(cacheKey)) {
+                continue;
+              }
+              downloadTarget = inputCache.getTempFile(cacheKey).getPath();
+            }
+          }
+          if (codec != null) {
+            // a decompressed file can not be compared with the checksum of the remote one
+            downloadTasks.add(new DownLoadTask(path, downloadTarget, fileLength, codec));
+            continue;
+          }
+          downloadedFiles.put(downloadTarget, path);
+          if (rangeSize > 0 && fileLength > rangeSize) {
+            RandomAccessFile preallocated = new RandomAccessFile(downloadTarget, "rw");
+            try {
+              preallocated.setLength(fileLength);
+            } finally {
+              preallocated.close();
+            }
+            for (long offset = 0; offset < fileLength; offset += rangeSize) {
+              downloadTasks.add(new DownLoadTask(path, downloadTarget, offset, Math.min(rangeSize, fileLength - offset)));
+            }
+          } else {
+            downloadTasks.add(new DownLoadTask(path, downloadTarget, fileLength, null));
+          }
         }
       }
 
-      boolean allDownloadTaskFinished = false;
+      // largest first, so that the last tasks running alone are the short ones
+      Collections.sort(downloadTasks, new Comparator<DownLoadTask>() {
+        @Override
+        public int compare(DownLoadTask t1, DownLoadTask t2) {
+          return Long.compare(t2.getSize(), t1.getSize());
+        }
+      });
+      long downloadStartTime = System.currentTimeMillis();
+      downloadConcurrency = downloadThreadNums;
+      for (DownLoadTask downloadTask : downloadTasks) {
+        executor.submit(downloadTask);
+      }
       executor.shutdown();
-      do {
-        try {
-          executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
-          allDownloadTaskFinished = true;
-        } catch (InterruptedException e) {
+      if (conf.getBoolean(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_THREAD_AUTOTUNE, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_AUTOTUNE)) {
+        awaitDownloadWithAutoTune(executor, Math.max(downloadThreadNums,
+            conf.getInt(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_THREAD_MAX, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_MAX)));
+      } else {
+        boolean allDownloadTaskFinished = false;
+        do {
+          try {
+            executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
+            allDownloadTaskFinished = true;
+          } catch (InterruptedException e) {
+          }
+        } while (!allDownloadTaskFinished);
+      }
+      long downloadCost = Math.max(1L, System.currentTimeMillis() - downloadStartTime);
+      downloadThroughput = downloadedBytes.get() * 1000L / downloadCost;
+      reportDownloadStatistics();
+      LOG.info("Downloaded " + downloadedBytes.get() + " bytes in " + downloadCost + " ms, throughput "
+          + downloadThroughput + " bytes/s, final concurrency " + downloadConcurrency);
+      boolean verifyAll = conf.getBoolean(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_CHECKSUM_VERIFY, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_CHECKSUM_VERIFY);
+      Map<String, Path> verifiedFiles = new LinkedHashMap<>();
+      for (Map.Entry<String, Path> downloaded : downloadedFiles.entrySet()) {
+        // a resumed download keeps the bytes of the failed attempt, so it is always verified
+        if (verifyAll || downloadResumes.containsKey(downloaded.getValue().toString())) {
+          verifiedFiles.put(downloaded.getKey(), downloaded.getValue());
+        }
+      }
+      if (!verifiedFiles.isEmpty()) {
+        ExecutorService verifyExecutor = Executors.newFixedThreadPool(
+            conf.getInt(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_NUMS),
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("Verify-File-Thread #%d")
+                .build()
+        );
+        for (Map.Entry<String, Path> verified : verifiedFiles.entrySet()) {
+          verifyExecutor.submit(new VerifyTask(verified.getValue(), verified.getKey()));
         }
-      } while (!allDownloadTaskFinished);
+        verifyExecutor.shutdown();
+        verifyExecutor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
+        LOG.info("Checksum of " + verifiedFiles.size() + " downloaded input files verified.");
+      }
+      if (inputCache != null) {
+        Map<String, File> published = new HashMap<>();
+        for (Map.Entry<String, String> miss : cacheMisses.entrySet()) {
+          File cached = published.get(miss.getValue());
+          if (cached == null) {
+            cached = inputCache.publish(miss.getValue());
+            published.put(miss.getValue(), cached);
+          }
+          inputCache.link(cached, miss.getKey());
+        }
+        inputCache.evict();
+      }
       LOG.info("All input files download finished.");
     }
   }
@@ -326,7 +988,7 @@ public class XLearningContainer {
         for (OutputInfo outputInfo : outputs) {
           FileSystem localFs = FileSystem.getLocal(conf);
           Path localPath = new Path(outputInfo.getLocalLocation());
-          Path remotePath = new Path(outputInfo.getDfsLocation() + "/_temporary/" + containerId.toString());
+          Path remotePath = Utilities.getTaskTemporaryOutputPath(outputInfo.getDfsLocation(), containerId.toString());
           FileSystem dfs = remotePath.getFileSystem(conf);
           if (dfs.exists(remotePath)) {
             LOG.info("Container remote output path " + remotePath + "exists, so we has to delete is first.");
@@ -471,6 +1133,23 @@ public class XLearningContainer {
     envList.add("CLASSPATH=" + "./:" + System.getenv("CLASSPATH") + ":" + System.getProperty("java.class.path"));
     envList.add("PYTHONUNBUFFERED=1");
     envList.add(XLearningConstants.Environment.XLEARNING_INPUT_FILE_LIST.toString() + "=" + this.inputFileList);
+    File ringBufferFile = new File(conf.get(XLearningConfiguration.XLEARNING_INPUT_STREAM_RING_BUFFER_FILE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_RING_BUFFER_FILE));
+    boolean ringBufferTransport = conf.get(XLearningConfiguration.XLEARNING_INPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STRATEGY).equals("STREAM")
+        && conf.get(XLearningConfiguration.XLEARNING_INPUT_STREAM_TRANSPORT, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_TRANSPORT).toUpperCase().equals("MMAP");
+    final RingBufferOutputStream ringBuffer;
+    if (ringBufferTransport) {
+      // created before the process starts, so the process can open it right away
+      ringBuffer = new RingBufferOutputStream(ringBufferFile,
+          conf.getInt(XLearningConfiguration.XLEARNING_INPUT_STREAM_RING_BUFFER_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_RING_BUFFER_SIZE));
+      envList.add(XLearningConstants.Environment.XLEARNING_STREAM_RING_BUFFER.toString() + "=" + ringBufferFile.getAbsolutePath());
+    } else {
+      ringBuffer = null;
+    }
+    final Map<String, List<InputSplit>> streamInputs = new LinkedHashMap<>();
+    final boolean fifoTransport = conf.get(XLearningConfiguration.XLEARNING_INPUT_STREAM_TRANSPORT, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_TRANSPORT).toUpperCase().equals("FIFO");
+    if (conf.get(XLearningConfiguration.XLEARNING_INPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STRATEGY).equals("STREAM")) {
+      buildStreamInputs(streamInputs, fifoTransport);
+    }
 
     if ("TENSORFLOW".equals(xlearningAppType)) {
       envList.add(XLearningConstants.Environment.XLEARNING_TF_INDEX.toString() + "=" + this.index);
@@ -525,60 +1204,42 @@ public class XLearningContainer {
         @Override
         public void run() {
           try {
-            OutputStreamWriter osw = new OutputStreamWriter(xlearningProcess.getOutputStream());
-            File gzFile = new File(conf.get(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHEFILE_NAME, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHEFILE_NAME));
-            GZIPOutputStream gos = new GZIPOutputStream(new FileOutputStream(gzFile));
-            boolean isCache = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHE, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHE);
-            List<InputSplit> inputs = Arrays.asList(amClient.getStreamInputSplit(containerId));
-            JobConf jobConf = new JobConf(conf);
-            RecordReader reader;
-            InputFormat inputFormat = ReflectionUtils.newInstance(conf.getClass(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_INPUTF0RMAT_CLASS, InputFormat.class),
-                jobConf);
-            for (int j = 0; j < conf.getInt(XLearningConfiguration.XLEARNING_STREAM_EPOCH, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_EPOCH); j++) {
-              LOG.info("Epoch " + (j + 1) + " starting...");
-              for (int i = 0, len = inputs.size(); i < len; i++) {
-                LOG.info("split " + (i + 1) + " is handling...");
-                reader = inputFormat.getRecordReader(inputs.get(i), jobConf, Reporter.NULL);
-                Object key = reader.createKey();
-                Object value = reader.createValue();
-                Boolean finished = false;
-                while (!finished) {
-                  try {
-                    finished = !reader.next(key, value);
-                    if (finished) {
-                      break;
-                    }
-                    osw.write(value.toString());
-                    osw.write("\n");
-                    if (j == 0 && isCache) {
-                      if (conf.getInt(XLearningConfiguration.XLEARNING_STREAM_EPOCH, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_EPOCH) > 1) {
-                        gos.write(value.toString().getBytes());
-                        gos.write("\n".getBytes());
-
-                        if ((gzFile.length() / 1024 / 1024) > conf.getInt(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT)) {
-                          LOG.info("Inputformat cache file size is:" + gzFile.length() / 1024 / 1024 + "M "
-                              + "beyond the limit size:" + conf.getInt(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT) + "M.");
-                          gzFile.delete();
-                          LOG.info("Local cache file deleted and will not use cache.");
-                          isCache = false;
-                        }
-                      }
+            int bufferSize = conf.getInt(XLearningConfiguration.XLEARNING_INPUT_STREAM_BUFFER_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_BUFFER_SIZE);
+            streamInputMetrics.setReaderThreadNum(conf.getInt(XLearningConfiguration.XLEARNING_INPUT_STREAM_READER_THREAD_NUMS,
+                XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_READER_THREAD_NUMS) * Math.max(1, streamInputs.size()));
+            if (fifoTransport) {
+              // every input is written to its own named pipe, nothing is written to stdin
+              xlearningProcess.getOutputStream().close();
+              final int fifoBufferSize = bufferSize;
+              for (final Map.Entry<String, List<InputSplit>> input : streamInputs.entrySet()) {
+                Thread fifoThread = new Thread(new Runnable() {
+                  @Override
+                  public void run() {
+                    try {
+                      // opening blocks until the process opens the pipe for reading, so each pipe is opened by its own thread
+                      OutputStream fifo = new BufferedOutputStream(streamInputMetrics.meter(new FileOutputStream(input.getKey())), fifoBufferSize);
+                      writeStreamInput(fifo, Collections.singletonMap(input.getKey(), input.getValue()), input.getKey());
+                    } catch (Exception e) {
+                      LOG.warn("Exception in thread writing the stream input " + input.getKey());
+                      e.printStackTrace();
                     }
-                  } catch (EOFException e) {
-                    finished = true;
-                    e.printStackTrace();
                   }
-                }
-                reader.close();
-                LOG.info("split " + (i + 1) + " is finished.");
-              }
-              LOG.info("Epoch " + (j + 1) + " finished.");
-              if (isCache) {
-                break;
+                });
+                fifoThread.setDaemon(true);
+                fifoThread.start();
               }
+              return;
+            }
+            OutputStream stdin;
+            if (ringBuffer != null) {
+              // the user process reads the input from the ring buffer, so it sees the end of stdin at once
+              xlearningProcess.getOutputStream().close();
+              ringBuffer.setReader(xlearningProcess);
+              stdin = new BufferedOutputStream(streamInputMetrics.meter(ringBuffer), bufferSize);
+            } else {
+              stdin = new BufferedOutputStream(streamInputMetrics.meter(xlearningProcess.getOutputStream()), bufferSize);
             }
-            osw.close();
-            gos.close();
+            writeStreamInput(stdin, streamInputs, null);
           } catch (Exception e) {
             LOG.warn("Exception in thread stdinRedirectThread");
             e.printStackTrace();
@@ -595,21 +1256,31 @@ public class XLearningContainer {
         @Override
         public void run() {
           try {
-            BufferedReader reader;
-            reader = new BufferedReader(new InputStreamReader(xlearningProcess.getInputStream()));
+            boolean binaryFraming = conf.get(XLearningConfiguration.XLEARNING_STREAM_RECORD_FRAMING, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_RECORD_FRAMING).toUpperCase().equals("BINARY");
             List<OutputInfo> outputs = Arrays.asList(amClient.getOutputLocation());
             JobConf jobConf = new JobConf(conf);
-            jobConf.setOutputKeyClass(Text.class);
-            jobConf.setOutputValueClass(Text.class);
-            jobConf.setBoolean("mapred.output.compress", true);
-            jobConf.set("mapred.output.compression.codec", "org.apache.hadoop.io.compress.GzipCodec");
-            jobConf.setOutputFormat(TextMultiOutputFormat.class);
+            jobConf.setBoolean("mapred.output.compress", conf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_COMPRESS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_COMPRESS));
+            Class<? extends OutputFormat> outputFormatClass = conf.getClass(XLearningConfiguration.XLEARNING_OUTPUTFORMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUTF0RMAT_CLASS, OutputFormat.class);
+            if (binaryFraming) {
+              jobConf.setOutputKeyClass(NullWritable.class);
+              jobConf.setOutputValueClass(BytesWritable.class);
+              // SequenceFile only supports the gzip codec with the native zlib, the default codec works without
+              jobConf.set("mapred.output.compression.codec", "org.apache.hadoop.io.compress.DefaultCodec");
+              jobConf.set("mapred.output.compression.type", SequenceFile.CompressionType.BLOCK.toString());
+              if (outputFormatClass == TextMultiOutputFormat.class) {
+                outputFormatClass = SequenceFileOutputFormat.class;
+              }
+            } else {
+              jobConf.setOutputKeyClass(Text.class);
+              jobConf.setOutputValueClass(Text.class);
+              jobConf.set("mapred.output.compression.codec", "org.apache.hadoop.io.compress.GzipCodec");
+            }
+            jobConf.setOutputFormat(outputFormatClass);
 
-            Path remotePath = new Path(outputs.get(0).getDfsLocation() + "/_temporary/" + containerId.toString());
+            Path remotePath = Utilities.getTaskTemporaryOutputPath(outputs.get(0).getDfsLocation(), containerId.toString());
             FileSystem dfs = remotePath.getFileSystem(jobConf);
             jobConf.set(XLearningConstants.STREAM_OUTPUT_DIR, remotePath.makeQualified(dfs).toString());
-            OutputFormat outputFormat = ReflectionUtils.newInstance(conf.getClass(XLearningConfiguration.XLEARNING_OUTPUTFORMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUTF0RMAT_CLASS, OutputFormat.class),
-                jobConf);
+            OutputFormat outputFormat = ReflectionUtils.newInstance(outputFormatClass, jobConf);
             outputFormat.checkOutputSpecs(dfs, jobConf);
             JobID jobID = new JobID(new SimpleDateFormat("yyyyMMddHHmm").format(new Date()), 0);
             TaskAttemptID taId = new TaskAttemptID(new TaskID(jobID, true, 0), 0);
@@ -617,14 +1288,46 @@ public class XLearningContainer {
             jobConf.set("mapred.task.id", taId.toString());
             jobConf.set("mapred.job.id", jobID.toString());
             amClient.reportMapedTaskID(containerId, taId.toString());
-            RecordWriter writer = outputFormat.getRecordWriter(dfs, jobConf, "part-r", Reporter.NULL);
-            String xlearningStreamResultLine;
-            while ((xlearningStreamResultLine = reader.readLine()) != null) {
-              writer.write(null, xlearningStreamResultLine);
+            streamOutputTaskId = taId.toString();
+            int partitions = conf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_PARTITIONS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_PARTITIONS);
+            RecordWriter writer;
+            if (partitions > 0 && !binaryFraming) {
+              Class<? extends Partitioner> partitionerClass = conf.getClass(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_PARTITIONER_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_PARTITIONER_CLASS, Partitioner.class);
+              writer = new StreamOutputPartitioner(dfs, jobConf, outputFormatClass, partitionerClass, partitions);
+            } else {
+              if (partitions > 0) {
+                LOG.warn("The stream output is not partitioned under the binary record framing, which has no keys.");
+              }
+              writer = outputFormat.getRecordWriter(dfs, jobConf, "part-r", Reporter.NULL);
+            }
+            if (binaryFraming) {
+              DataInputStream in = new DataInputStream(new BufferedInputStream(xlearningProcess.getInputStream()));
+              BytesWritable value = new BytesWritable();
+              while (true) {
+                int length;
+                try {
+                  length = in.readInt();
+                } catch (EOFException e) {
+                  break;
+                }
+                value.setSize(length);
+                in.readFully(value.getBytes(), 0, length);
+                writer.write(NullWritable.get(), value);
+              }
+              in.close();
+            } else {
+              // splits the lines on the bytes into one reused Text, which the record writer writes as is,
+              // instead of decoding every line into a String and encoding it back
+              LineReader reader = new LineReader(xlearningProcess.getInputStream());
+              Text xlearningStreamResultLine = new Text();
+              while (reader.readLine(xlearningStreamResultLine) > 0) {
+                writer.write(null, xlearningStreamResultLine);
+              }
+              reader.close();
             }
             writer.close(Reporter.NULL);
-            reader.close();
             dfs.close();
+            streamOutputSucceeded = true;
           } catch (Exception e) {
             LOG.warn("Exception in thread stdoutRedirectThread");
             e.printStackTrace();
@@ -632,6 +1335,7 @@ public class XLearningContainer {
         }
       });
       stdoutRedirectThread.start();
+      streamOutputThread = stdoutRedirectThread;
     } else {
       LOG.info("Starting thread to redirect stdout of xlearning process");
       Thread stdoutRedirectThread = new Thread(new Runnable() {
@@ -759,6 +1463,9 @@ public class XLearningContainer {
       this.xlearningCmdProcessId = getPidOfProcess(xlearningProcess);
       LOG.info("xlearningCmdProcessId is:" + this.xlearningCmdProcessId);
       containerReporter = new ContainerReporter(amClient, conf, containerId, this.xlearningCmdProcessId);
+      if (conf.get(XLearningConfiguration.XLEARNING_INPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STRATEGY).equals("STREAM")) {
+        containerReporter.setStreamInputMetrics(streamInputMetrics);
+      }
       containerReporter.setDaemon(true);
       containerReporter.start();
     }
@@ -795,9 +1502,48 @@ public class XLearningContainer {
     //As role is worker
     if (code == 0) {
       this.uploadOutputFiles();
+      return this.commitOutputs();
     } else {
       return false;
     }
+  }
+
+  /**
+   * Commits the output of the container with the output committer when the containers commit their own
+   * outputs, once the stream output is written completely.
+   */
+  private boolean commitOutputs() throws IOException {
+    if (!conf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_CONTAINER_COMMIT, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_CONTAINER_COMMIT)) {
+      return true;
+    }
+    List<OutputInfo> outputs = Arrays.asList(amClient.getOutputLocation());
+    if (outputs.size() == 0) {
+      return true;
+    }
+    XLearningOutputCommitter committer = ReflectionUtils.newInstance(
+        conf.getClass(XLearningConfiguration.XLEARNING_OUTPUT_COMMITTER_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMMITTER_CLASS, XLearningOutputCommitter.class), conf);
+    if (this.conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STRATEGY).equals("STREAM")) {
+      try {
+        streamOutputThread.join();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while waiting for the stream output");
+      }
+      if (!streamOutputSucceeded) {
+        LOG.error("The stream output of the container is incomplete, do not commit it.");
+        return false;
+      }
+      String dfsLocation = outputs.get(0).getDfsLocation();
+      Path tmpResultPath = Utilities.getStreamTaskOutputPath(dfsLocation, containerId.toString(), streamOutputTaskId);
+      committer.commitTask(tmpResultPath.getFileSystem(conf), tmpResultPath,
+          Utilities.getTaskFinalOutputPath(dfsLocation, containerId.toString()));
+    } else {
+      for (OutputInfo outputInfo : outputs) {
+        Path tmpResultPath = Utilities.getTaskTemporaryOutputPath(outputInfo.getDfsLocation(), containerId.toString());
+        committer.commitTask(tmpResultPath.getFileSystem(conf), tmpResultPath,
+            Utilities.getTaskFinalOutputPath(outputInfo.getDfsLocation(), containerId.toString()));
+      }
+    }
+    LOG.info("Committed the output of container " + containerId.toString());
     return true;
   }
 
@@ -28,6 +28,7 @@ import static org.apache.hadoop.yarn.util.StringHelper.join;
 import org.apache.hadoop.fs.FSDataInputStream;
 import net.qihoo.xlearning.conf.XLearningConfiguration;
 import net.qihoo.xlearning.webapp.AMParams;
+import net.qihoo.xlearning.webapp.StreamMetricsChart;
 import org.apache.hadoop.yarn.webapp.WebApp;
 import org.apache.hadoop.yarn.webapp.WebApps;
 
@@ -164,6 +165,10 @@ public class HsController extends Controller implements AMParams {
                   if (map.containsKey("CPUUTIL")) {
                     set("cpuUtilMetrics" + workeri, new Gson().toJson(map.get("CPUUTIL")));
                   }
+                  String streamMetrics = StreamMetricsChart.toJson(map);
+                  if (streamMetrics != null) {
+                    set(CONTAINER_STREAM_METRICS + workeri, streamMetrics);
+                  }
                 }
                 set("WORKER_CONTAINER_ID" + workeri, info);
                 workeri++;
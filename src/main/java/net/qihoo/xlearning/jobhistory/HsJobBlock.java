@@ -1,6 +1,7 @@
 package net.qihoo.xlearning.jobhistory;
 
 import net.qihoo.xlearning.webapp.AMParams;
+import net.qihoo.xlearning.webapp.StreamMetricsChart;
 import org.apache.hadoop.mapreduce.v2.app.AppContext;
 import org.apache.hadoop.yarn.webapp.hamlet.Hamlet;
 import org.apache.hadoop.yarn.webapp.hamlet.Hamlet.TABLE;
@@ -244,6 +245,9 @@ public class HsJobBlock extends HtmlBlock implements AMParams {
                 "});\n";
           }
           html.script().$type("text/javascript")._(striptHead + striptBody)._();
+          if (!$(CONTAINER_STREAM_METRICS + i).equals("")) {
+            StreamMetricsChart.render(html, $(CONTAINER_STREAM_METRICS + i), "containerStream" + i, containerClass);
+          }
         }
       }
     } else {
@@ -0,0 +1,163 @@
+package net.qihoo.xlearning.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Lists the files under the input paths recursively, listing the directories concurrently with a bounded
+ * thread pool. Each directory costs exactly one listing call, the type of its children is taken from the
+ * returned statuses. Input paths may be globs, and sub directories named like partitions ("key=value") are
+ * only traversed when they match the partition filter.
+ */
+public class InputPathLister {
+  private static final Log LOG = LogFactory.getLog(InputPathLister.class);
+
+  private final Configuration conf;
+
+  private final int threadNum;
+
+  private final boolean located;
+
+  private final Pattern partitionFilter;
+
+  private final Map<Path, Long> directories;
+
+  /**
+   * @param threadNum       number of the directories listed at the same time
+   * @param located         whether to list the files with their block locations
+   * @param partitionFilter regex the partition directory names must match, blank to traverse all
+   */
+  public InputPathLister(Configuration conf, int threadNum, boolean located, String partitionFilter) {
+    this.conf = conf;
+    this.threadNum = Math.max(1, threadNum);
+    this.located = located;
+    this.partitionFilter = StringUtils.isBlank(partitionFilter) ? null : Pattern.compile(partitionFilter);
+    this.directories = new LinkedHashMap<>();
+  }
+
+  /**
+   * The directories traversed by all the listings so far with their modification times.
+   */
+  public Map<Path, Long> getDirectories() {
+    return directories;
+  }
+
+  public List<FileStatus> list(Path path) throws IOException {
+    long start = System.currentTimeMillis();
+    final FileSystem fs = path.getFileSystem(conf);
+    FileStatus[] roots = fs.globStatus(path);
+    if (roots == null || roots.length == 0) {
+      throw new FileNotFoundException("Input path " + path + " does not exist");
+    }
+
+    List<FileStatus> fileStatuses = new ArrayList<>(1000);
+    int dirCount = 0;
+    ExecutorService executor = Executors.newFixedThreadPool(threadNum, new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("List-Input-Thread #%d")
+        .build());
+    try {
+      CompletionService<List<FileStatus>> completionService = new ExecutorCompletionService<>(executor);
+      int pending = 0;
+      for (FileStatus root : roots) {
+        if (root.isDirectory()) {
+          directories.put(root.getPath(), root.getModificationTime());
+          completionService.submit(new ListTask(fs, root.getPath()));
+          pending++;
+        } else {
+          fileStatuses.add(located ? fs.listLocatedStatus(root.getPath()).next() : root);
+        }
+      }
+      while (pending > 0) {
+        List<FileStatus> children = completionService.take().get();
+        pending--;
+        dirCount++;
+        for (FileStatus child : children) {
+          if (!child.isDirectory()) {
+            fileStatuses.add(child);
+          } else if (acceptDirectory(child.getPath())) {
+            directories.put(child.getPath(), child.getModificationTime());
+            completionService.submit(new ListTask(fs, child.getPath()));
+            pending++;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Listing input path " + path + " is interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Listing input path " + path + " failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // keep the order of the listing stable since the allocation of the files depends on it
+    Collections.sort(fileStatuses, new Comparator<FileStatus>() {
+      @Override
+      public int compare(FileStatus f1, FileStatus f2) {
+        return f1.getPath().compareTo(f2.getPath());
+      }
+    });
+    LOG.info("Listed input path " + path + " with " + fileStatuses.size() + " files in " + dirCount
+        + " directories, cost " + (System.currentTimeMillis() - start) + " ms.");
+    return fileStatuses;
+  }
+
+  private boolean acceptDirectory(Path dir) {
+    String name = dir.getName();
+    return partitionFilter == null || name.indexOf('=') < 0 || partitionFilter.matcher(name).matches();
+  }
+
+  private class ListTask implements Callable<List<FileStatus>> {
+
+    private final FileSystem fs;
+
+    private final Path dir;
+
+    ListTask(FileSystem fs, Path dir) {
+      this.fs = fs;
+      this.dir = dir;
+    }
+
+    @Override
+    public List<FileStatus> call() throws IOException {
+      List<FileStatus> children = new ArrayList<>();
+      if (located) {
+        RemoteIterator<LocatedFileStatus> iterator = fs.listLocatedStatus(dir);
+        while (iterator.hasNext()) {
+          children.add(iterator.next());
+        }
+      } else {
+        Collections.addAll(children, fs.listStatus(dir));
+      }
+      return children;
+    }
+  }
+}
@@ -32,30 +32,6 @@ public final class Utilities {
     }
   }
 
-  public static List<FileStatus> listStatusRecursively(Path path, FileSystem fs, List<FileStatus> fileStatuses)
-      throws IOException {
-    if (fileStatuses == null) {
-      fileStatuses = new ArrayList<>(1000);
-    }
-    LOG.info("input path: " + path.toString());
-    FileStatus[] fileStatus = fs.listStatus(path);
-    if (fileStatus != null && fileStatus.length > 0) {
-      for (FileStatus f : fileStatus) {
-        if (fs.isDirectory(f.getPath())) {
-          listStatusRecursively(f.getPath(), fs, fileStatuses);
-        } else {
-          fileStatuses.add(f);
-        }
-      }
-    } else {
-      LOG.info("input list size:" + fileStatus.length);
-      if (fileStatus == null) {
-        LOG.info("fileStatus is null");
-      }
-    }
-    return fileStatuses;
-  }
-
   public static List<Path> convertStatusToPath(List<FileStatus> fileStatuses) {
     List<Path> paths = new ArrayList<>();
     if (fileStatuses != null) {
@@ -75,6 +51,29 @@ public final class Utilities {
     return remotePath;
   }
 
+  /**
+   * Returns the temporary path of the output of a container, uploaded by the container or, under the STREAM
+   * strategy, the output directory of the output format of the container.
+   */
+  public static Path getTaskTemporaryOutputPath(String dfsLocation, String containerId) {
+    return new Path(dfsLocation + "/_temporary/" + containerId);
+  }
+
+  /**
+   * Returns the path the output format of a container writes the STREAM output to, the task attempt dir of
+   * the FileOutputCommitter under the temporary path of the container.
+   */
+  public static Path getStreamTaskOutputPath(String dfsLocation, String containerId, String taskId) {
+    return new Path(getTaskTemporaryOutputPath(dfsLocation, containerId), "_temporary/0/_temporary/" + taskId);
+  }
+
+  /**
+   * Returns the path the output of a container is committed to, a directory named by the container.
+   */
+  public static Path getTaskFinalOutputPath(String dfsLocation, String containerId) {
+    return new Path(dfsLocation + "/" + containerId);
+  }
+
   public static void setPathExecutableRecursively(String path) {
     File file = new File(path);
     if (!file.exists()) {
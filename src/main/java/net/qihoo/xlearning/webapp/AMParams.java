@@ -25,6 +25,8 @@ public interface AMParams {
 
   public static final String CONTAINER_CPU_METRICS = "container.cpu.metrics";
 
+  public static final String CONTAINER_STREAM_METRICS = "container.stream.metrics";
+
   public static final String BOARD_INFO = "board.info";
 
   public static final String BOARD_INFO_FLAG = "board.info.flag";
@@ -51,4 +53,8 @@ public interface AMParams {
 
   public static final String CONTAINER_FINISH_TIME = "container.finish.time";
 
+  public static final String CONTAINER_INPUT_BYTES = "container.input.bytes";
+
+  public static final String CONTAINER_INPUT_SPLITS = "container.input.splits";
+
 }
@@ -66,6 +66,8 @@ public class AppController extends Controller implements AMParams {
     Map<XLearningContainerId, String> reporterProgress = app.context.getReporterProgress();
     Map<XLearningContainerId, String> containersAppStartTime = app.context.getContainersAppStartTime();
     Map<XLearningContainerId, String> containersAppFinishTime = app.context.getContainersAppFinishTime();
+    Map<XLearningContainerId, Long> containersInputBytes = app.context.getContainersInputBytes();
+    Map<XLearningContainerId, Integer> containersInputSplitNum = app.context.getContainersInputSplitNum();
     set(CONTAINER_NUMBER, String.valueOf(workerContainers.size() + psContainers.size()));
     set(WORKER_NUMBER, String.valueOf(workerContainers.size()));
     set(USER_NAME, StringUtils.split(conf.get("hadoop.job.ugi"), ',')[0]);
@@ -79,6 +81,16 @@ public class AppController extends Controller implements AMParams {
         set(CONTAINER_STATUS + i, "-");
       }
       set(CONTAINER_ROLE + i, "worker");
+      if (containersInputBytes.get(new XLearningContainerId(container.getId())) != null) {
+        set(CONTAINER_INPUT_BYTES + i, org.apache.hadoop.util.StringUtils.byteDesc(containersInputBytes.get(new XLearningContainerId(container.getId()))));
+      } else {
+        set(CONTAINER_INPUT_BYTES + i, "N/A");
+      }
+      if (containersInputSplitNum.get(new XLearningContainerId(container.getId())) != null) {
+        set(CONTAINER_INPUT_SPLITS + i, String.valueOf(containersInputSplitNum.get(new XLearningContainerId(container.getId()))));
+      } else {
+        set(CONTAINER_INPUT_SPLITS + i, "N/A");
+      }
 
       if (app.context.getContainersCpuMetrics().get(new XLearningContainerId(container.getId())) != null) {
         ConcurrentHashMap<String, LinkedBlockingDeque<Object>> cpuMetrics = app.context.getContainersCpuMetrics().get(new XLearningContainerId(container.getId()));
@@ -87,6 +99,10 @@ public class AppController extends Controller implements AMParams {
           if (cpuMetrics.containsKey("CPUUTIL")) {
             set("cpuUtilMetrics" + i, new Gson().toJson(cpuMetrics.get("CPUUTIL")));
           }
+          String streamMetrics = StreamMetricsChart.toJson(cpuMetrics);
+          if (streamMetrics != null) {
+            set(CONTAINER_STREAM_METRICS + i, streamMetrics);
+          }
         }
       }
 
@@ -139,6 +155,8 @@ public class AppController extends Controller implements AMParams {
       } else if ($(APP_TYPE).equals("Mxnet")) {
         set(CONTAINER_ROLE + i, "server");
       }
+      set(CONTAINER_INPUT_BYTES + i, "N/A");
+      set(CONTAINER_INPUT_SPLITS + i, "N/A");
 
       set(CONTAINER_REPORTER_PROGRESS + i, "0.00%");
       if (containersAppStartTime.get(new XLearningContainerId(container.getId())) != null && !containersAppStartTime.get(new XLearningContainerId(container.getId())).equals("")) {
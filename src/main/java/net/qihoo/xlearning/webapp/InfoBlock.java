@@ -30,6 +30,8 @@ public class InfoBlock extends HtmlBlock implements AMParams {
           th("ui-state-default", "Container Host").
           th("ui-state-default", "Container Role").
           th("ui-state-default", "Container Status").
+          th("ui-state-default", "Input Bytes").
+          th("ui-state-default", "Input Splits").
           th("ui-state-default", "Start Time").
           th("ui-state-default", "Finish Time").
           th("ui-state-default", "Reporter Progress").
@@ -54,6 +56,8 @@ public class InfoBlock extends HtmlBlock implements AMParams {
               td(containerMachine.split(":")[0]).
               td($(CONTAINER_ROLE + i)).
               td($(CONTAINER_STATUS + i)).
+              td($(CONTAINER_INPUT_BYTES + i)).
+              td($(CONTAINER_INPUT_SPLITS + i)).
               td($(CONTAINER_START_TIME + i)).
               td($(CONTAINER_FINISH_TIME + i)).
               td($(CONTAINER_REPORTER_PROGRESS + i)).td()._()._();
@@ -62,6 +66,8 @@ public class InfoBlock extends HtmlBlock implements AMParams {
               td(containerMachine.split(":")[0]).
               td($(CONTAINER_ROLE + i)).
               td($(CONTAINER_STATUS + i)).
+              td($(CONTAINER_INPUT_BYTES + i)).
+              td($(CONTAINER_INPUT_SPLITS + i)).
               td($(CONTAINER_START_TIME + i)).
               td($(CONTAINER_FINISH_TIME + i)).
               td("N/A").td()._()._();
@@ -70,6 +76,8 @@ public class InfoBlock extends HtmlBlock implements AMParams {
               td(containerMachine.split(":")[0]).
               td($(CONTAINER_ROLE + i)).
               td($(CONTAINER_STATUS + i)).
+              td($(CONTAINER_INPUT_BYTES + i)).
+              td($(CONTAINER_INPUT_SPLITS + i)).
               td($(CONTAINER_START_TIME + i)).
               td($(CONTAINER_FINISH_TIME + i)).td()
               .div().$class("ui-progressbar ui-widget ui-widget-content ui-corner-all").$title($(CONTAINER_REPORTER_PROGRESS + i))
@@ -296,6 +304,9 @@ public class InfoBlock extends HtmlBlock implements AMParams {
                   "});\n";
             }
             html.script().$type("text/javascript")._(striptHead + striptBody)._();
+            if (!$(CONTAINER_STREAM_METRICS + i).equals("")) {
+              StreamMetricsChart.render(html, $(CONTAINER_STREAM_METRICS + i), "containerStream" + i, containerClass);
+            }
           }
         }
       }
@@ -29,6 +29,8 @@ public class SingleInfoBlock extends HtmlBlock implements AMParams {
           th("ui-state-default", "Container ID").
           th("ui-state-default", "Container Host").
           th("ui-state-default", "Container Status").
+          th("ui-state-default", "Input Bytes").
+          th("ui-state-default", "Input Splits").
           th("ui-state-default", "Start Time").
           th("ui-state-default", "Finish Time").
           th("ui-state-default", "Reporter Progress").
@@ -52,6 +54,8 @@ public class SingleInfoBlock extends HtmlBlock implements AMParams {
           td._().
               td(containerMachine.split(":")[0]).
               td($(CONTAINER_STATUS + i)).
+              td($(CONTAINER_INPUT_BYTES + i)).
+              td($(CONTAINER_INPUT_SPLITS + i)).
               td($(CONTAINER_START_TIME + i)).
               td($(CONTAINER_FINISH_TIME + i)).
               td($(CONTAINER_REPORTER_PROGRESS + i)).td()._()._();
@@ -59,6 +63,8 @@ public class SingleInfoBlock extends HtmlBlock implements AMParams {
           td._().
               td(containerMachine.split(":")[0]).
               td($(CONTAINER_STATUS + i)).
+              td($(CONTAINER_INPUT_BYTES + i)).
+              td($(CONTAINER_INPUT_SPLITS + i)).
               td($(CONTAINER_START_TIME + i)).
               td($(CONTAINER_FINISH_TIME + i)).
               td("N/A").td()._()._();
@@ -66,6 +72,8 @@ public class SingleInfoBlock extends HtmlBlock implements AMParams {
           td._().
               td(containerMachine.split(":")[0]).
               td($(CONTAINER_STATUS + i)).
+              td($(CONTAINER_INPUT_BYTES + i)).
+              td($(CONTAINER_INPUT_SPLITS + i)).
               td($(CONTAINER_START_TIME + i)).
               td($(CONTAINER_FINISH_TIME + i)).td()
               .div().$class("ui-progressbar ui-widget ui-widget-content ui-corner-all").$title($(CONTAINER_REPORTER_PROGRESS + i))
@@ -290,6 +298,9 @@ public class SingleInfoBlock extends HtmlBlock implements AMParams {
                   "});\n";
             }
             html.script().$type("text/javascript")._(striptHead + striptBody)._();
+            if (!$(CONTAINER_STREAM_METRICS + i).equals("")) {
+              StreamMetricsChart.render(html, $(CONTAINER_STREAM_METRICS + i), "containerStream" + i, containerClass);
+            }
           }
         }
       }
@@ -0,0 +1,100 @@
+package net.qihoo.xlearning.webapp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.hadoop.yarn.webapp.hamlet.Hamlet;
+import org.apache.hadoop.yarn.webapp.hamlet.Hamlet.DIV;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Charts of the STREAM input metrics reported by the workers, drawn next to the cpu metrics on the AM and
+ * the history pages.
+ */
+public final class StreamMetricsChart {
+
+  private static final String[][] METRICS = {
+      {"STREAMRECORDS", "stream input records( /s )", "records"},
+      {"STREAMBYTES", "stream input throughput( MB/s )", "throughput"},
+      {"STREAMWRITEBLOCKED", "blocked writing to the process( % )", "write blocked"},
+      {"STREAMREADBLOCKED", "blocked reading the records( % )", "read blocked"},
+      {"STREAMSPLITOPEN", "split open latency( ms )", "open latency"}
+  };
+
+  private StreamMetricsChart() {
+  }
+
+  /**
+   * Returns the stream input series of the container metrics as a json object, or null if there is none.
+   */
+  public static String toJson(Map<String, ?> metrics) {
+    Map<String, Object> series = new LinkedHashMap<>();
+    for (String[] metric : METRICS) {
+      if (metrics.containsKey(metric[0])) {
+        series.put(metric[0], metrics.get(metric[0]));
+      }
+    }
+    return series.isEmpty() ? null : new Gson().toJson(series);
+  }
+
+  /**
+   * Draws a chart for every series of the json written by {@link #toJson}, expects highstock already loaded.
+   */
+  public static void render(Hamlet html, String json, String idPrefix, String containerClass) {
+    JsonObject series = new JsonParser().parse(json).getAsJsonObject();
+    DIV<Hamlet> div = html.div();
+    StringBuilder script = new StringBuilder();
+    for (String[] metric : METRICS) {
+      JsonElement data = series.get(metric[0]);
+      if (data == null) {
+        continue;
+      }
+      String id = idPrefix + metric[0];
+      div.div().$id(id).$class(containerClass).$style("height: 400px; min-width: 310px; diplay:inline-block")._();
+      script.append("Highcharts.stockChart('").append(id).append("', {\n" +
+          "    chart: {\n" +
+          "        width: 550\n" +
+          "    },\n" +
+          "\n" +
+          "    rangeSelector: {\n" +
+          "        buttons: [{\n" +
+          "            count: 1,\n" +
+          "            type: 'minute',\n" +
+          "            text: '1M'\n" +
+          "        }, {\n" +
+          "            count: 5,\n" +
+          "            type: 'minute',\n" +
+          "            text: '5M'\n" +
+          "        }, {\n" +
+          "            type: 'all',\n" +
+          "            text: 'All'\n" +
+          "        }],\n" +
+          "        inputEnabled: false,\n" +
+          "        selected: 0\n" +
+          "    },\n" +
+          "\n" +
+          "    title: {\n" +
+          "        text: '").append(metric[1]).append("'\n" +
+          "    },\n" +
+          "\n" +
+          "    credits: {\n" +
+          "        enabled: false\n" +
+          "    },\n" +
+          "\n" +
+          "    exporting: {\n" +
+          "        enabled: false\n" +
+          "    },\n" +
+          "\n" +
+          "    series: [{\n" +
+          "            name: '").append(metric[2]).append("',\n" +
+          "            data: ").append(data.toString()).append("\n" +
+          "        }]\n" +
+          "});\n");
+    }
+    div._();
+    html.script().$type("text/javascript")._(script.toString())._();
+  }
+}
@@ -0,0 +1,138 @@
+package net.qihoo.xlearning.AM;
+
+import net.qihoo.xlearning.common.InputSplitLease;
+import net.qihoo.xlearning.container.XLearningContainerId;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamSplitQueueTest {
+
+  private static final long LEASE_TIMEOUT = 200L;
+
+  private final XLearningContainerId container1 = newContainerId(1);
+
+  private final XLearningContainerId container2 = newContainerId(2);
+
+  private final XLearningContainerId container3 = newContainerId(3);
+
+  private static XLearningContainerId newContainerId(int id) {
+    ApplicationAttemptId attemptId = ApplicationAttemptId.newInstance(ApplicationId.newInstance(1L, 1), 1);
+    return new XLearningContainerId(ContainerId.newContainerId(attemptId, id));
+  }
+
+  private static StreamSplitQueue newQueue(int splitNum) {
+    InputSplit[] splits = new InputSplit[splitNum];
+    for (int i = 0; i < splitNum; i++) {
+      splits[i] = new FileSplit(new Path("/input/part-" + i), 0L, 100L, (String[]) null);
+    }
+    return new StreamSplitQueue(splits, LEASE_TIMEOUT);
+  }
+
+  @Test
+  public void testEveryEpochLeasesAllSplitsOnce() {
+    StreamSplitQueue queue = newQueue(3);
+    Set<Integer> leased = new HashSet<>();
+    for (int i = 0; i < 3; i++) {
+      leased.add(queue.lease(container1, 0).getSplitId());
+    }
+    assertEquals(3, leased.size());
+    assertEquals(InputSplitLease.WAIT, queue.lease(container2, 0).getSplitId());
+
+    // the epochs are independent of each other
+    assertEquals(0, queue.lease(container2, 1).getSplitId());
+
+    for (int splitId : leased) {
+      assertTrue(queue.finish(container1, 0, splitId));
+    }
+    assertEquals(InputSplitLease.FINISHED, queue.lease(container2, 0).getSplitId());
+    assertEquals(1, queue.lease(container2, 1).getSplitId());
+  }
+
+  @Test
+  public void testExpiredLeaseIsRequeued() throws InterruptedException {
+    StreamSplitQueue queue = newQueue(1);
+    assertEquals(0, queue.lease(container1, 0).getSplitId());
+    assertEquals(InputSplitLease.WAIT, queue.lease(container2, 0).getSplitId());
+    Thread.sleep(LEASE_TIMEOUT * 2);
+    assertEquals(0, queue.lease(container2, 0).getSplitId());
+  }
+
+  @Test
+  public void testRenewKeepsLease() throws InterruptedException {
+    StreamSplitQueue queue = newQueue(1);
+    assertEquals(0, queue.lease(container1, 0).getSplitId());
+    for (int i = 0; i < 4; i++) {
+      Thread.sleep(LEASE_TIMEOUT / 2);
+      queue.renew(container1);
+    }
+    assertEquals(InputSplitLease.WAIT, queue.lease(container2, 0).getSplitId());
+    assertTrue(queue.finish(container1, 0, 0));
+    assertEquals(InputSplitLease.FINISHED, queue.lease(container2, 0).getSplitId());
+  }
+
+  @Test
+  public void testRenewOnlyExtendsLeasesOfContainer() throws InterruptedException {
+    StreamSplitQueue queue = newQueue(2);
+    assertEquals(0, queue.lease(container1, 0).getSplitId());
+    assertEquals(1, queue.lease(container2, 0).getSplitId());
+    Thread.sleep(LEASE_TIMEOUT * 2);
+    queue.renew(container2);
+    assertEquals(0, queue.lease(container3, 0).getSplitId());
+    assertEquals(InputSplitLease.WAIT, queue.lease(container3, 0).getSplitId());
+  }
+
+  @Test
+  public void testSplitsOfFailedContainerAreRequeued() {
+    StreamSplitQueue queue = newQueue(2);
+    assertEquals(0, queue.lease(container1, 0).getSplitId());
+    assertEquals(1, queue.lease(container1, 0).getSplitId());
+    assertTrue(queue.finish(container1, 0, 1));
+    assertTrue(queue.getLeaseHolders().contains(container1));
+
+    queue.requeue(container1);
+    assertFalse(queue.getLeaseHolders().contains(container1));
+    // only the split not finished is read again
+    assertEquals(0, queue.lease(container2, 0).getSplitId());
+    assertEquals(InputSplitLease.WAIT, queue.lease(container2, 0).getSplitId());
+    assertTrue(queue.finish(container2, 0, 0));
+    assertEquals(InputSplitLease.FINISHED, queue.lease(container2, 0).getSplitId());
+  }
+
+  @Test
+  public void testFinishAfterExpiryReleasesOnlyOwnLease() throws InterruptedException {
+    StreamSplitQueue queue = newQueue(1);
+    assertEquals(0, queue.lease(container1, 0).getSplitId());
+    Thread.sleep(LEASE_TIMEOUT * 2);
+    assertEquals(0, queue.lease(container2, 0).getSplitId());
+
+    // the first container still finishes the split, the lease of the second one is kept
+    assertTrue(queue.finish(container1, 0, 0));
+    assertEquals(InputSplitLease.WAIT, queue.lease(container3, 0).getSplitId());
+    assertFalse(queue.finish(container2, 0, 0));
+    assertEquals(InputSplitLease.FINISHED, queue.lease(container3, 0).getSplitId());
+  }
+
+  @Test
+  public void testFinishedSplitIsNotRequeuedOnExpiry() throws InterruptedException {
+    StreamSplitQueue queue = newQueue(1);
+    assertEquals(0, queue.lease(container1, 0).getSplitId());
+    Thread.sleep(LEASE_TIMEOUT * 2);
+    assertEquals(0, queue.lease(container2, 0).getSplitId());
+    assertTrue(queue.finish(container1, 0, 0));
+    Thread.sleep(LEASE_TIMEOUT * 2);
+    // the expired lease of the second container does not bring the finished split back
+    assertEquals(InputSplitLease.FINISHED, queue.lease(container3, 0).getSplitId());
+  }
+}
@@ -0,0 +1,152 @@
+package net.qihoo.xlearning.common;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelCompressionOutputStreamTest {
+
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private static final int MAX_BLOCKS = 3;
+
+  private CompressionCodec codec;
+
+  private ExecutorService compressors;
+
+  private ExecutorService writer;
+
+  @Before
+  public void setUp() {
+    codec = ReflectionUtils.newInstance(GzipCodec.class, new Configuration());
+    compressors = Executors.newFixedThreadPool(4);
+    writer = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    compressors.shutdownNow();
+    writer.shutdownNow();
+  }
+
+  private byte[] decompress(byte[] compressed) throws IOException {
+    InputStream in = codec.createInputStream(new ByteArrayInputStream(compressed));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      IOUtils.copyBytes(in, out, 4096, false);
+    } finally {
+      in.close();
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testOutputDecodesToInput() throws IOException {
+    // compressible text and random bytes, in writes not aligned to the blocks, for many more than maxBlocks blocks
+    Random random = new Random(42L);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    for (int i = 0; expected.size() < BLOCK_SIZE * MAX_BLOCKS * 5 + 123; i++) {
+      if (i % 3 == 0) {
+        byte[] noise = new byte[random.nextInt(10000)];
+        random.nextBytes(noise);
+        expected.write(noise);
+      } else {
+        expected.write(("line " + i + "\tvalue " + random.nextInt() + "\n").getBytes("UTF-8"));
+      }
+    }
+    byte[] data = expected.toByteArray();
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    OutputStream out = new ParallelCompressionOutputStream(compressed, codec, compressors, writer, BLOCK_SIZE, MAX_BLOCKS);
+    int off = 0;
+    while (off < data.length) {
+      int len = Math.min(data.length - off, 1 + random.nextInt(3 * BLOCK_SIZE / 2));
+      out.write(data, off, len);
+      off += len;
+    }
+    out.close();
+
+    assertArrayEquals(data, decompress(compressed.toByteArray()));
+  }
+
+  @Test
+  public void testStreamsSharingBlocksDecodeToTheirInputs() throws IOException {
+    // more streams than blocks, filled by one thread in turns as the partitions of the stream output are
+    int streamNum = MAX_BLOCKS * 3;
+    CompressionBlockPool blockPool = new CompressionBlockPool(BLOCK_SIZE, MAX_BLOCKS);
+    ByteArrayOutputStream[] expected = new ByteArrayOutputStream[streamNum];
+    ByteArrayOutputStream[] compressed = new ByteArrayOutputStream[streamNum];
+    OutputStream[] outs = new OutputStream[streamNum];
+    for (int i = 0; i < streamNum; i++) {
+      expected[i] = new ByteArrayOutputStream();
+      compressed[i] = new ByteArrayOutputStream();
+      outs[i] = new ParallelCompressionOutputStream(compressed[i], codec, compressors, writer, blockPool);
+    }
+    Random random = new Random(7L);
+    for (int i = 0; i < 20000; i++) {
+      int stream = random.nextInt(streamNum);
+      byte[] line = ("stream " + stream + " line " + i + " " + random.nextLong() + "\n").getBytes("UTF-8");
+      expected[stream].write(line);
+      outs[stream].write(line);
+    }
+    for (int i = 0; i < streamNum; i++) {
+      outs[i].close();
+      assertArrayEquals(expected[i].toByteArray(), decompress(compressed[i].toByteArray()));
+    }
+  }
+
+  @Test
+  public void testEmptyOutputDecodesToEmpty() throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    new ParallelCompressionOutputStream(compressed, codec, compressors, writer, BLOCK_SIZE, MAX_BLOCKS).close();
+    assertTrue(compressed.size() > 0);
+    assertArrayEquals(new byte[0], decompress(compressed.toByteArray()));
+  }
+
+  @Test
+  public void testCloseSurfacesWriteFailure() throws IOException {
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("disk full");
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        throw new IOException("disk full");
+      }
+    };
+    OutputStream out = new ParallelCompressionOutputStream(failing, codec, compressors, writer, BLOCK_SIZE, MAX_BLOCKS);
+    // one full block is submitted before any write can fail, the error surfaces in close
+    out.write(new byte[BLOCK_SIZE + 10]);
+    try {
+      out.close();
+      fail("The failure of the underlying stream is not surfaced by close");
+    } catch (IOException e) {
+      Throwable cause = e;
+      while (cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      assertEquals("disk full", cause.getMessage());
+    }
+  }
+}